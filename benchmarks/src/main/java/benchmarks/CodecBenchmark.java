@@ -0,0 +1,59 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import utils.GenomeCache;
+import utils.Protocol;
+import utils.Rng;
+import utils.Util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conversion of genomes into messages and back, once per trial or per batch
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CodecBenchmark {
+
+    @Param({"98", "3000"})
+    public int length;
+
+    private float[] values;
+    private byte[] bytes;
+    private Protocol protocol = new Protocol();
+    private byte[] frame;
+
+    @Setup
+    public void setup() {
+        Rng random = new Rng(1);
+        values = new float[length];
+        for (int i = 0; i < length; i++) values[i] = 2 * random.nextFloat() - 1;
+        bytes = Util.float2ByteArray(values);
+        frame = new Protocol().encode(Protocol.GENOME, 0, 0, values, 0, length).clone();
+    }
+
+    @Benchmark
+    public byte[] float2ByteArray() {
+        return Util.float2ByteArray(values);
+    }
+
+    @Benchmark
+    public float[] bytes2FloatArray() {
+        return Util.bytes2FloatArray(bytes);
+    }
+
+    @Benchmark
+    public byte[] protocolEncode() {
+        return protocol.encode(Protocol.GENOME, 0, 0, values, 0, length);
+    }
+
+    @Benchmark
+    public float protocolDecode() {
+        protocol.decode(frame);
+        return protocol.getPayload().get(length - 1);
+    }
+}
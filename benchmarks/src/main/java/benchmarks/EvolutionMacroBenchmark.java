@@ -0,0 +1,213 @@
+package benchmarks;
+
+import evolution.Evaluator;
+import evolution.EvolutionEngine;
+import evolution.EvolutionLogger;
+import evolution.Population;
+import nn.FeedForward;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+/**
+ * Macro benchmark of the evolution loop the supervisor runs: statistics, VEGA (or elitist) selection, crossover,
+ * mutation and logging through EvolutionLogger, for a number of generations of every combination of population size,
+ * number of games and hidden neurons. Trials are replaced by a synthetic evaluator whose cost is set in control
+ * steps, each one run of the genome's network, so the share of time spent by the GA itself can be read off as trial
+ * cost grows.
+ * Usage: java -cp target/benchmarks.jar benchmarks.EvolutionMacroBenchmark [key=value ...]
+ *   generations=50  warmup=10  pop=30,100,300  games=1,3  hidden=4,8,16  steps=0,100  algorithm=VEGA|NSGA2|ELITISM|STEADY_STATE
+ *   logging=1
+ * Log files are written into out/ of the working directory, console output of the logger is discarded. With
+ * logging=0 no logger is attached, which separates the cost of breeding from the cost of logging. In steady state
+ * a generation is NN_POP_SIZE offspring, and its breeding latency is the time spent breeding and taking them in.
+ */
+public class EvolutionMacroBenchmark {
+
+    private static int GENERATIONS = 50;
+    private static int WARMUP = 10;
+    private static int[] POP_SIZES = {30, 100, 300};
+    private static int[] GAME_POP_SIZES = {1, 3};
+    private static int[] HIDDEN_NEURONS = {4, 8, 16};
+    private static int[] STEPS = {0, 100};
+    private static int ALGORITHM = EvolutionEngine.VEGA;
+    private static int LOGGING = 1;
+    private static final int NB_INPUTS = 9;
+    private static final int NB_OUTPUTS = 2;
+
+    /**
+     * Fitness on game k is the mean of one output of the network over a number of steps, mapped into [0, 1].
+     * With 0 steps it is read straight from the genes, which makes trials free.
+     */
+    private static class SyntheticEvaluator implements Evaluator {
+        private int steps;
+        private FeedForward network;
+        private double[] inputs = new double[NB_INPUTS];
+        private double[] outputs = new double[NB_OUTPUTS];
+        private double[] sum = new double[NB_OUTPUTS];
+
+        SyntheticEvaluator(int steps, int hidden) {
+            this.steps = steps;
+            network = new FeedForward(NB_INPUTS, NB_OUTPUTS, hidden);
+        }
+
+        public void evaluate(Population population, int individual, double[] fitness) {
+            int i, k;
+            if (steps == 0) {
+                for (k = 0; k < fitness.length; k++) {
+                    fitness[k] = (1 + population.getGene(individual, k % population.getGenesNo())) / 2;
+                }
+                return;
+            }
+            for (i = 0; i < NB_OUTPUTS; i++) sum[i] = 0;
+            for (int s = 0; s < steps; s++) {
+                for (i = 0; i < NB_INPUTS; i++) inputs[i] = ((s * 31 + i * 17) % 100) / 100.0;
+                network.run(population.getGenes(), population.offset(individual), inputs, 0, outputs, 0);
+                for (i = 0; i < NB_OUTPUTS; i++) sum[i] += outputs[i];
+            }
+            for (k = 0; k < fitness.length; k++) fitness[k] = (1 + sum[k % NB_OUTPUTS] / steps) / 2;
+        }
+    }
+
+    public static void main(String[] args) {
+        for (String arg : args) {
+            String[] kv = arg.split("=", 2);
+            if (kv.length != 2) {
+                System.err.println("Ignored argument " + arg);
+            } else if (kv[0].equals("generations")) {
+                GENERATIONS = Integer.parseInt(kv[1]);
+            } else if (kv[0].equals("warmup")) {
+                WARMUP = Integer.parseInt(kv[1]);
+            } else if (kv[0].equals("pop")) {
+                POP_SIZES = parseList(kv[1]);
+            } else if (kv[0].equals("games")) {
+                GAME_POP_SIZES = parseList(kv[1]);
+            } else if (kv[0].equals("hidden")) {
+                HIDDEN_NEURONS = parseList(kv[1]);
+            } else if (kv[0].equals("steps")) {
+                STEPS = parseList(kv[1]);
+            } else if (kv[0].equals("logging")) {
+                LOGGING = Integer.parseInt(kv[1]);
+            } else if (kv[0].equals("algorithm")) {
+                ALGORITHM = EvolutionEngine.algorithmOf(kv[1]);
+            } else {
+                System.err.println("Ignored argument " + arg);
+            }
+        }
+        new File("out").mkdirs();
+
+        System.out.printf("%6s %5s %6s %6s %10s %12s %12s %12s %8s %14s%n", "pop", "games", "hidden", "steps",
+                "gen/s", "eval/s", "p50 [us]", "p99 [us]", "GA [%]", "bytes/gen");
+        for (int pop : POP_SIZES) {
+            for (int games : GAME_POP_SIZES) {
+                for (int hidden : HIDDEN_NEURONS) {
+                    for (int steps : STEPS) run(pop, games, hidden, steps);
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs one configuration and prints a row of results.
+     * Breeding latency is the time of EvolutionEngine.nextGeneration(), i.e. statistics, logging and breeding.
+     */
+    private static void run(int pop, int games, int hidden, int steps) {
+        int i;
+        if (games > pop) return;
+        EvolutionEngine engine = new EvolutionEngine(pop, games, NB_INPUTS, NB_OUTPUTS, hidden, 42);
+        engine.setAlgorithm(ALGORITHM);
+        double[] min = new double[games], max = new double[games];
+        Arrays.fill(max, 1);
+        engine.setFitnessRanges(min, max, 0, games);
+
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            public void write(int b) {
+            }
+
+            public void write(byte[] b, int off, int len) {
+            }
+        }));
+        EvolutionLogger logger = LOGGING == 1 ? new EvolutionLogger(pop, games, engine.getGenesNo()) : null;
+        engine.setListener(logger);
+        engine.initialise();
+        SyntheticEvaluator evaluator = new SyntheticEvaluator(steps, hidden);
+
+        if (ALGORITHM == EvolutionEngine.STEADY_STATE) engine.runSteadyState(evaluator, WARMUP);
+        else for (i = 0; i < WARMUP; i++) engine.runGeneration(evaluator);
+
+        Population pending = new Population(1, engine.getGenesNo(), games);
+        double[] fitness = new double[games];
+        long[] breeding = new long[GENERATIONS];
+        long evaluating = 0;
+        long bytes = allocatedBytes();
+        long start = System.nanoTime();
+        for (i = 0; i < GENERATIONS; i++) {
+            if (ALGORITHM == EvolutionEngine.STEADY_STATE) {
+                for (int j = 0; j < pop; j++) {
+                    long t0 = System.nanoTime();
+                    engine.nextOffspring(pending, 0);
+                    long t1 = System.nanoTime();
+                    evaluator.evaluate(pending, 0, fitness);
+                    for (int k = 0; k < games; k++) pending.setObjective(k, 0, fitness[k]);
+                    long t2 = System.nanoTime();
+                    engine.offspringEvaluated(pending, 0);
+                    breeding[i] += t1 - t0 + System.nanoTime() - t2;
+                    evaluating += t2 - t1;
+                }
+                continue;
+            }
+            long t0 = System.nanoTime();
+            engine.evaluate(evaluator);
+            long t1 = System.nanoTime();
+            engine.nextGeneration();
+            breeding[i] = System.nanoTime() - t1;
+            evaluating += t1 - t0;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        bytes = allocatedBytes() - bytes;
+        if (logger != null) logger.close();
+        System.setOut(console);
+
+        Arrays.sort(breeding);
+        long bred = 0;
+        for (i = 0; i < GENERATIONS; i++) bred += breeding[i];
+        System.out.printf("%6d %5d %6d %6d %10.1f %12.0f %12.1f %12.1f %8.1f %14d%n", pop, games, hidden, steps,
+                GENERATIONS / seconds, (double) GENERATIONS * pop / seconds,
+                percentile(breeding, 0.5) / 1e3, percentile(breeding, 0.99) / 1e3,
+                100.0 * bred / (bred + evaluating), bytes / GENERATIONS);
+    }
+
+    /**
+     * @param sorted    Values in ascending order
+     * @param q         Quantile in [0, 1]
+     */
+    private static long percentile(long[] sorted, double q) {
+        int index = (int) Math.ceil(q * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    /**
+     * @return  Bytes allocated so far by all live threads, including the log writer threads
+     */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) return 0;
+        long[] bytes = ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(bean.getAllThreadIds());
+        long total = 0;
+        for (long b : bytes) {
+            if (b > 0) total += b;
+        }
+        return total;
+    }
+
+    private static int[] parseList(String list) {
+        String[] items = list.split(",");
+        int[] values = new int[items.length];
+        for (int i = 0; i < items.length; i++) values[i] = Integer.parseInt(items[i].trim());
+        return values;
+    }
+}
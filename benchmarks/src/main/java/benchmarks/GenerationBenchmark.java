@@ -0,0 +1,56 @@
+package benchmarks;
+
+import evolution.EvolutionEngine;
+import evolution.Population;
+import org.openjdk.jmh.annotations.*;
+import utils.Rng;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One generation of the engine without trials: statistics, VEGA, NSGA-II or elitist breeding, mutation and
+ * bookkeeping.
+ * Fitness columns are refilled with fixed random scores before every generation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GenerationBenchmark {
+
+    @Param({"30", "300"})
+    public int population;
+
+    @Param({"8"})
+    public int hidden;
+
+    @Param({"VEGA", "NSGA2", "ELITISM"})
+    public String algorithm;
+
+    private static final int GAMES = 3;
+
+    private EvolutionEngine engine;
+    private double[][] scores;
+
+    @Setup
+    public void setup() {
+        engine = new EvolutionEngine(population, GAMES, 9, 2, hidden, 1);
+        engine.setAlgorithm(EvolutionEngine.algorithmOf(algorithm));
+        engine.initialise();
+        Rng random = new Rng(2);
+        scores = new double[GAMES][population];
+        for (int k = 0; k < GAMES; k++) {
+            for (int i = 0; i < population; i++) scores[k][i] = -500 + 1000 * random.nextDouble();
+        }
+    }
+
+    @Benchmark
+    public Population nextGeneration() {
+        double[][] objectives = engine.getPopulation().getObjectives();
+        for (int k = 0; k < GAMES; k++) System.arraycopy(scores[k], 0, objectives[k], 0, population);
+        engine.nextGeneration();
+        return engine.getPopulation();
+    }
+}
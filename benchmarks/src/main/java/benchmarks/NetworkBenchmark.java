@@ -0,0 +1,64 @@
+package benchmarks;
+
+import nn.FeedForward;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import utils.Rng;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One control step of the e-puck: EpuckController.run_neural_network is a call of FeedForward.run on the genome
+ * under trial. batch runs the same network for a whole generation at once.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class NetworkBenchmark {
+
+    @Param({"0", "4", "8", "16", "32"})
+    public int hidden;
+
+    private static final int INPUTS = 9;
+    private static final int OUTPUTS = 2;
+    private static final int POPULATION = 30;
+
+    private FeedForward network;
+    private float[] weights;
+    private float[] genomes;
+    private double[] inputs, outputs;
+    private double[] batchInputs, batchOutputs;
+
+    @Setup
+    public void setup() {
+        int i;
+        Rng random = new Rng(1);
+        network = new FeedForward(INPUTS, OUTPUTS, hidden);
+        weights = new float[network.getWeightsNo()];
+        genomes = new float[POPULATION * network.getWeightsNo()];
+        for (i = 0; i < weights.length; i++) weights[i] = 2 * random.nextFloat() - 1;
+        for (i = 0; i < genomes.length; i++) genomes[i] = 2 * random.nextFloat() - 1;
+        inputs = new double[INPUTS];
+        for (i = 0; i < INPUTS; i++) inputs[i] = random.nextDouble();
+        outputs = new double[OUTPUTS];
+        batchInputs = new double[POPULATION * INPUTS];
+        for (i = 0; i < batchInputs.length; i++) batchInputs[i] = random.nextDouble();
+        batchOutputs = new double[POPULATION * OUTPUTS];
+    }
+
+    @Benchmark
+    public void run(Blackhole bh) {
+        network.run(weights, inputs, outputs);
+        bh.consume(outputs);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POPULATION)
+    public void batch(Blackhole bh) {
+        network.runBatch(genomes, batchInputs, batchOutputs, POPULATION);
+        bh.consume(batchOutputs);
+    }
+}
@@ -0,0 +1,77 @@
+package benchmarks;
+
+import evolution.NonDominatedSort;
+import org.openjdk.jmh.annotations.*;
+import utils.Rng;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pareto fronts and crowding distances of NSGA-II on random objectives, the efficient sort against the naive
+ * O(M N^2) front peeling it replaces
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class NonDominatedSortBenchmark {
+
+    @Param({"60", "600", "6000"})
+    public int size;
+
+    @Param({"2", "3", "5"})
+    public int objectivesNo;
+
+    private double[][] objectives;
+    private NonDominatedSort sort;
+    private int[] front;
+    private int[] dominators;
+
+    @Setup
+    public void setup() {
+        Rng random = new Rng(1);
+        objectives = new double[objectivesNo][size];
+        for (int k = 0; k < objectivesNo; k++) {
+            for (int i = 0; i < size; i++) objectives[k][i] = random.nextDouble();
+        }
+        sort = new NonDominatedSort(size);
+        front = new int[size];
+        dominators = new int[size];
+    }
+
+    @Benchmark
+    public int efficient() {
+        return sort.sort(objectives, size);
+    }
+
+    /**
+     * Fast non-dominated sort of the original NSGA-II: count dominators of every individual, then peel fronts
+     */
+    @Benchmark
+    public int naive() {
+        int i, j, fronts = 0, left = size;
+        for (i = 0; i < size; i++) {
+            dominators[i] = 0;
+            for (j = 0; j < size; j++) {
+                if (NonDominatedSort.dominates(objectives, j, i)) dominators[i]++;
+            }
+            front[i] = -1;
+        }
+        while (left > 0) {
+            for (i = 0; i < size; i++) {
+                if (front[i] < 0 && dominators[i] == 0) front[i] = fronts;
+            }
+            for (i = 0; i < size; i++) {
+                if (front[i] != fronts) continue;
+                left--;
+                for (j = 0; j < size; j++) {
+                    if (front[j] < 0 && NonDominatedSort.dominates(objectives, i, j)) dominators[j]--;
+                }
+            }
+            fronts++;
+        }
+        return fronts;
+    }
+}
@@ -0,0 +1,53 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import utils.Ranking;
+import utils.Rng;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ordering of a population by fitness, which replaced quickSort and sortPopulation. selectTop only orders the
+ * elite, as elitism and elite cutoffs need.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RankingBenchmark {
+
+    @Param({"30", "300", "3000"})
+    public int size;
+
+    private double[] fitness;
+    private int[] index, scratch;
+
+    @Setup
+    public void setup() {
+        Rng random = new Rng(1);
+        fitness = new double[size];
+        for (int i = 0; i < size; i++) fitness[i] = random.nextDouble();
+        index = new int[size];
+        scratch = new int[size];
+    }
+
+    @Benchmark
+    public int[] rank() {
+        Ranking.rank(fitness, index, scratch, size);
+        return index;
+    }
+
+    @Benchmark
+    public int[] selectTop() {
+        Ranking.identity(index, size);
+        Ranking.selectTop(fitness, index, scratch, size, Math.max(1, size / 10));
+        return index;
+    }
+
+    @Benchmark
+    public int argMax() {
+        return Ranking.argMax(fitness, size);
+    }
+}
@@ -0,0 +1,53 @@
+package benchmarks;
+
+import evolution.AliasSelection;
+import evolution.RouletteSelection;
+import evolution.Selection;
+import evolution.StochasticUniversalSampling;
+import evolution.TournamentSelection;
+import org.openjdk.jmh.annotations.*;
+import utils.Rng;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Filling a mating pool of a whole population, which replaced one rouletteSelect call per parent. Time includes
+ * preparing the scheme for the fitness column.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SelectionBenchmark {
+
+    @Param({"30", "300", "3000"})
+    public int size;
+
+    @Param({"roulette", "alias", "tournament", "sus"})
+    public String scheme;
+
+    private double[] fitness;
+    private int[] pool;
+    private Selection selection;
+    private Rng random = new Rng(1);
+
+    @Setup
+    public void setup() {
+        fitness = new double[size];
+        for (int i = 0; i < size; i++) fitness[i] = random.nextDouble();
+        pool = new int[size];
+        if (scheme.equals("alias")) selection = new AliasSelection();
+        else if (scheme.equals("tournament")) selection = new TournamentSelection(2);
+        else if (scheme.equals("sus")) selection = new StochasticUniversalSampling();
+        else selection = new RouletteSelection();
+    }
+
+    @Benchmark
+    public int[] fill() {
+        selection.prepare(fitness, 0, size);
+        selection.fill(pool, size, random);
+        return pool;
+    }
+}
@@ -0,0 +1,81 @@
+package benchmarks;
+
+import evolution.Population;
+import nn.NeuralNetwork;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import utils.Mutation;
+import utils.Rng;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mutation and crossover of one genome, both the per-gene NeuralNetwork methods and the Mutation/Population code
+ * the engine breeds with
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class VariationBenchmark {
+
+    @Param({"8", "32"})
+    public int hidden;
+
+    private static final double MUTATION_PROBABILITY = 0.1;
+    private static final double MUTATION_SIGMA = 0.2;
+
+    private Rng random = new Rng(1);
+    private NeuralNetwork[] networks;
+    private NeuralNetwork child;
+    private Population population, offspring;
+    private Mutation mutation;
+    private int genesNo;
+
+    @Setup
+    public void setup() {
+        networks = new NeuralNetwork[]{new NeuralNetwork(9, 2, hidden), new NeuralNetwork(9, 2, hidden)};
+        child = new NeuralNetwork(9, 2, hidden);
+        genesNo = child.getWeightsNo();
+        population = new Population(2, genesNo, 3);
+        offspring = new Population(2, genesNo, 3);
+        for (int i = 0; i < genesNo; i++) {
+            population.setGene(0, i, 2 * random.nextFloat() - 1);
+            population.setGene(1, i, 2 * random.nextFloat() - 1);
+        }
+        mutation = new Mutation(MUTATION_PROBABILITY, MUTATION_SIGMA, -1, 1);
+    }
+
+    /**
+     * Loop of the original breeding code: a draw per gene and a Gaussian mutation for the genes drawn
+     */
+    @Benchmark
+    public void networkMutate(Blackhole bh) {
+        float[] weights = child.getWeights();
+        for (int j = 0; j < genesNo; j++) {
+            if (random.nextFloat() < MUTATION_PROBABILITY) {
+                weights[j] = child.mutate(-1, 1, weights[j], MUTATION_SIGMA, random);
+            }
+        }
+        bh.consume(weights);
+    }
+
+    @Benchmark
+    public void networkCrossover(Blackhole bh) {
+        child.crossover(0, 1, child, genesNo, networks);
+        bh.consume(child);
+    }
+
+    @Benchmark
+    public int mutation() {
+        return mutation.mutate(population.getGenes(), population.offset(0), genesNo, random);
+    }
+
+    @Benchmark
+    public void populationCrossover(Blackhole bh) {
+        offspring.crossover(population, 0, 1, random.nextInt(genesNo), 0);
+        bh.consume(offspring);
+    }
+}
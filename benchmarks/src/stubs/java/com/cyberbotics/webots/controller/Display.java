@@ -0,0 +1,37 @@
+package com.cyberbotics.webots.controller;
+
+/**
+ * Stand-in for the Webots class, see Robot. Drawing does nothing.
+ */
+public class Display {
+
+    public int getWidth() {
+        return 100;
+    }
+
+    public int getHeight() {
+        return 100;
+    }
+
+    public void setOpacity(double opacity) {
+    }
+
+    public void setColor(int color) {
+    }
+
+    public void fillOval(int x, int y, int width, int height) {
+    }
+
+    public void fillRectangle(int x, int y, int width, int height) {
+    }
+
+    public ImageRef imageCopy(int x, int y, int width, int height) {
+        return new ImageRef();
+    }
+
+    public void imageSave(ImageRef image, String path) {
+    }
+
+    public void imageDelete(ImageRef image) {
+    }
+}
@@ -0,0 +1,14 @@
+package com.cyberbotics.webots.controller;
+
+/**
+ * Stand-in for the Webots class, see Robot. Sent packets are dropped.
+ */
+public class Emitter {
+
+    public int send(byte[] data) {
+        return 1;
+    }
+
+    public void setChannel(int channel) {
+    }
+}
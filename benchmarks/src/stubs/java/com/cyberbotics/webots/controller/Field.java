@@ -0,0 +1,17 @@
+package com.cyberbotics.webots.controller;
+
+/**
+ * Stand-in for the Webots class, see Robot
+ */
+public class Field {
+
+    private double[] value = new double[3];
+
+    public double[] getSFVec3f() {
+        return value.clone();
+    }
+
+    public void setSFVec3f(double[] value) {
+        this.value = value.clone();
+    }
+}
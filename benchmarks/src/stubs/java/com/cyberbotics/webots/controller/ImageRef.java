@@ -0,0 +1,7 @@
+package com.cyberbotics.webots.controller;
+
+/**
+ * Stand-in for the Webots class, see Robot
+ */
+public class ImageRef {
+}
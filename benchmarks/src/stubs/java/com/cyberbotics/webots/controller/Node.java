@@ -0,0 +1,11 @@
+package com.cyberbotics.webots.controller;
+
+/**
+ * Stand-in for the Webots class, see Robot
+ */
+public class Node {
+
+    public Field getField(String name) {
+        return new Field();
+    }
+}
@@ -0,0 +1,24 @@
+package com.cyberbotics.webots.controller;
+
+/**
+ * Stand-in for the Webots class, see Robot. No packet ever arrives.
+ */
+public class Receiver {
+
+    public void enable(int ms) {
+    }
+
+    public void setChannel(int channel) {
+    }
+
+    public int getQueueLength() {
+        return 0;
+    }
+
+    public byte[] getData() {
+        return new byte[0];
+    }
+
+    public void nextPacket() {
+    }
+}
@@ -0,0 +1,31 @@
+package com.cyberbotics.webots.controller;
+
+/**
+ * Stand-in for the Webots class, so that controllers compile and can be benchmarked without Webots.
+ * Devices do nothing and step() never ends the simulation.
+ */
+public class Robot {
+
+    public static final int SIMULATION = 0;
+    public static final int REALITY = 2;
+
+    public int step(int ms) {
+        return 0;
+    }
+
+    public int getMode() {
+        return SIMULATION;
+    }
+
+    public Emitter getEmitter(String name) {
+        return new Emitter();
+    }
+
+    public Receiver getReceiver(String name) {
+        return new Receiver();
+    }
+
+    public Display getDisplay(String name) {
+        return new Display();
+    }
+}
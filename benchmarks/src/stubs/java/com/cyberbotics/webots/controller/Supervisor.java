@@ -0,0 +1,11 @@
+package com.cyberbotics.webots.controller;
+
+/**
+ * Stand-in for the Webots class, see Robot
+ */
+public class Supervisor extends Robot {
+
+    public Node getFromDef(String name) {
+        return new Node();
+    }
+}
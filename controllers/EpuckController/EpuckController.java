@@ -1,12 +1,20 @@
 import com.cyberbotics.webots.controller.*;
 import games.Game;
+import nn.FeedForward;
+import util.AsyncLog;
+import util.Events;
 import util.FilesFunctions;
+import util.FitnessStore;
+import util.GenomeCache;
+import util.Metrics;
+import util.Mutation;
+import util.Protocol;
+import util.Ranking;
+import util.Rng;
 import util.Util;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.util.Random;
+import java.nio.FloatBuffer;
 
 /**
  * Created with IntelliJ IDEA.
@@ -36,12 +44,15 @@ public class EpuckController extends Robot {
     private int NB_WEIGHTS;
     private int NB_CONSTANTS = 4;
     private float weights[];
+    private FeedForward network;
+    private double[] outputs = new double[NB_OUTPUTS];
 
     // Evolution of games
     private Game[] populationOfGames;
     private double[] gameFitness;                           // Fitness of games (variance of actors)
     private double[] fitnessOfSolutions;                    // Fitness scores of each actor (calculation dependant on method chosen)
-    private double[][] sortedfitnessGames;                  // Population of games sorted byte fitness
+    private int[] rankedGames;                              // Indexes of games sorted by fitness, best first
+    private int[] rankingScratch;
     private double[][] agentsFitness;                       // Fitness of agents for each game - used for Multi-objective Optimisation
     private double[][] actorFitPerGame;
 
@@ -52,9 +63,26 @@ public class EpuckController extends Robot {
     private int GENE_MIN = -1;
     private int GENE_MAX = 1;                               // Range of genes: maximum value
     private double MUTATION_SIGMA = 0.2;                    // Mutations follow a Box-Muller distribution from the gene with this sigma
+    private Mutation mutation = new Mutation(MUTATION_PROBABILITY, MUTATION_SIGMA, GENE_MIN, GENE_MAX);
     private int generation = 0;                             // Generation counter
     //If 1, evolution takes place. If 0, then the best individual obtained during the previous evolution is tested for an undetermined amount of time.
     private int EVOLVING = 1;
+    // If 1, a trial ends as soon as the individual cannot reach the elite of the last generation on any game
+    private int RACING = 1;
+    private double[] MAX_REWARD = new double[]{2, 1, 1};   // Highest fitness each game awards in one step
+    private double[] eliteCutoffs;                          // Raw fitness of the worst elite on each game, from supervisor
+    private boolean abandoned;                              // Current trial lost the race, its fitness is extrapolated
+    // If 1, supervisor uploads genomes of a whole generation at once and they are run back to back (see SupervisorController)
+    private int BATCH = 1;
+    private float[] batch;                                  // Queued genomes, NB_WEIGHTS floats each
+    private int batchSize;                                  // Number of queued genomes
+    private int batchPos;                                   // Index of genome being run
+    private boolean batchMode = BATCH == 1;                 // Genomes come in batches; single genome frames turn it off
+    private boolean waiting = true;                         // Out of batch mode, no genome to run until one is received
+    private int GENOME_CACHE_CAPACITY = 64;                 // Must be the same in SupervisorController
+    private GenomeCache genomeCache;                        // Genomes patches sent by supervisor refer to
+    private Protocol protocol = new Protocol();             // Frames exchanged with the supervisor
+    private int genomeGeneration, genomeIndividual;         // Header of the genome being run, echoed with its fitness
 
     //Log variables
     private double minFitGame = 0.0, avgFitGame = 0.0, bestFitGame = 0.0, absBestFitGame = 0.0;
@@ -90,13 +118,27 @@ public class EpuckController extends Robot {
     private Receiver gameReceiver;
 
     // Logging
-    private BufferedWriter out1, out2, out3, out4, out5;
-    private FileWriter file1, file2, file3, file4, file5;
+    private AsyncLog log = new AsyncLog(256, 1 << 16);    // Files are written by a background thread
+    private int resultsFile, bestFile, allGenomesFile, gamesGenomesFile;
+    private String FITNESS = "out/fitness_games";            // Columnar fitness of actors and games, see FitnessStore
+    private FitnessStore fitnessStore;
+    private String METRICS = "out/metrics_epuck.txt";       // Replaced with metrics so far after every generation
+    private Runnable dumpMetrics = new Runnable() {         // Runs on the log writer thread, not in a control step
+        public void run() {
+            Metrics.dump(METRICS);
+        }
+    };
+    private Metrics.Histogram queueLength = Metrics.histogram("receiver.queue");
+    private Metrics.Histogram trialSteps = Metrics.histogram("trial.steps");
+    private Events.Trial trialEvent = new Events.Trial();
+    private int steps;                                      // Control steps the network ran in current trial
 
     private int step;
-    private Random random = new Random();
+    private long SEED = System.nanoTime();          // Seed of evolution of games; set a fixed value to repeat it
+    private Rng random = new Rng(SEED);
 
     private int indiv;
+    private int trialsRun;                          // Trials run in current generation; cached genomes are not sent
     private int TESTING = 0;
 
 
@@ -118,24 +160,30 @@ public class EpuckController extends Robot {
 
             int m = gameReceiver.getQueueLength();
             if (m > 0) {
-                byte[] flag = gameReceiver.getData();
+                boolean valid = protocol.decode(gameReceiver.getData());
 
-                if (flag[0] == 1) { // is flag 1 is received, evolution can be started (the frequency is set by supervisor)
+                if (valid && protocol.getType() == Protocol.ELITE_CUTOFFS && protocol.getLength() == GAME_POP_SIZE) {
+                    // elite cutoffs of the generation evaluated last
+                    FloatBuffer cutoffs = protocol.getPayload();
+                    if (eliteCutoffs == null) eliteCutoffs = new double[GAME_POP_SIZE];
+                    for (i = 0; i < GAME_POP_SIZE; i++) eliteCutoffs[i] = cutoffs.get(i);
+
+                } else if (valid && protocol.getType() == Protocol.END_GENERATION) { // evolution can be started (the frequency is set by supervisor)
 
                     /* Start evolution of games */
-                    //setGameFitness();
+                    setGameFitness(trialsRun);
                     // 1. Sort populationOfGames by fitness
-                    sortPopulation(sortedfitnessGames, gameFitness);
+                    Ranking.rank(gameFitness, rankedGames, rankingScratch, GAME_POP_SIZE);
                     // 2. Find best, average and worst game
-                    bestFitGame = sortedfitnessGames[0][0]; // fitness score of best indiv
-                    minFitGame = sortedfitnessGames[GAME_POP_SIZE - 1][0];  // fitness score of worst indiv
-                    bestGame = (int) sortedfitnessGames[0][1]; // index of best individual
+                    bestFitGame = gameFitness[rankedGames[0]]; // fitness score of best indiv
+                    minFitGame = gameFitness[rankedGames[GAME_POP_SIZE - 1]];  // fitness score of worst indiv
+                    bestGame = rankedGames[0]; // index of best individual
                     avgFitGame = util.Util.mean(gameFitness);
                     // 3. Log best, average and worst fitness score - writes to the file
                     if (bestFitGame > absBestFitGame) {
                         absBestFitGame = bestFitGame;
                         absBestGame = bestGame;
-                        FilesFunctions.logBest(out3, generation, NB_CONSTANTS, absBestGame, populationOfGames);
+                        FilesFunctions.logBest(log, bestFile, generation, NB_CONSTANTS, absBestGame, populationOfGames);
                     }
                     System.out.println("Best game fitness score: \n" + bestFitGame);
                     System.out.println("Average game fitness score: \n" + avgFitGame);
@@ -143,20 +191,11 @@ public class EpuckController extends Robot {
                     System.out.println("Absolute best index: " + absBestGame);
 
                     // 4. Write data to files
-                    FilesFunctions.logFitnessCases(out1, avgFitGame, generation, bestFitGame, minFitGame);
-                    FilesFunctions.logCompFitnesses(out2, generation, gameFitness);
+                    FilesFunctions.logFitnessCases(log, resultsFile, avgFitGame, generation, bestFitGame, minFitGame);
                     // Log the generation data  - stores constants
-                    try {
-                        FilesFunctions.logLastGeneration(populationOfGames);
-                    } catch (IOException e) {
-                        e.getMessage();
-                    }
-
-                    try {
-                        FilesFunctions.logAllGameGenomes(out5, generation, populationOfGames);
-                    } catch (IOException e) {
-                        System.err.println(e.getMessage());
-                    }
+                    FilesFunctions.logLastGeneration(log, gamesGenomesFile, populationOfGames);
+                    FilesFunctions.logAllGameGenomes(log, allGenomesFile, generation, populationOfGames);
+                    log.submit(dumpMetrics);
 
                     // 5. Rank populationOfGames, select best individuals and create new generation
                     //createNewPopulation();
@@ -170,72 +209,165 @@ public class EpuckController extends Robot {
                     minFitGame = 0;
                     // Reset all fitness arrays
                     resetAllFitnessArrays();
+                    indiv = 0;
+                    trialsRun = 0;
 
                 }
                 gameReceiver.nextPacket();
             }
-            if (step == 0) {
+            if (step == 0 && batchPos < batchSize) {
+                // Next genome of the batch, no need to wait for supervisor
+                System.arraycopy(batch, batchPos * NB_WEIGHTS, weights, 0, NB_WEIGHTS);
+            } else if (step == 0) {
                 int n = receiver.getQueueLength();
+                queueLength.record(n);
                 // Wait for new genome
                 if (n > 0) {
-                    byte[] genes = receiver.getData();
-                    if (genes.length == (NB_WEIGHTS) * 4) {  // 64
-                        weights = Util.bytes2FloatArray(genes);
-                    } else {
-                        // Set neural network weights
-                        int p = 0;
-                        int r = 0;
-                        byte[] weight = new byte[4];
-                        for (i = 0; i < genes.length - 4; i++) {
-                            if (p < 4) {
-                                weight[p] = genes[i];
-                                p++;
-                            } else {
-                                p = 0;
-                                r++;
+                    boolean unknownParent = false;
+                    if (protocol.decode(receiver.getData())) {
+                        FloatBuffer payload = protocol.getPayload();
+                        if (protocol.getType() == Protocol.GENOME_RECORD) {
+                            unknownParent = genomeCache.decode(payload, weights, 0) < 0;
+                            singleGenome();
+                            if (!unknownParent) {
+                                // weights are only whole if the patch applied
+                                genomeGeneration = protocol.getGeneration();
+                                genomeIndividual = protocol.getIndividual();
+                                waiting = false;
+                            }
+                        } else if (protocol.getType() == Protocol.BATCH_RECORDS) {
+                            batchMode = true;
+                            batchSize = protocol.getIndividual();
+                            batchPos = 0;
+                            if (batch == null || batch.length < batchSize * NB_WEIGHTS) batch = new float[batchSize * NB_WEIGHTS];
+                            for (i = 0; i < batchSize; i++) {
+                                if (genomeCache.decode(payload, batch, i * NB_WEIGHTS) < 0) unknownParent = true;
                             }
+                            if (unknownParent) batchSize = 0;
+                            else System.arraycopy(batch, 0, weights, 0, NB_WEIGHTS);
+                            genomeGeneration = protocol.getGeneration();
+                        } else if (protocol.getType() == Protocol.GENOME && protocol.getLength() == NB_WEIGHTS) {
+                            payload.get(weights);
+                            singleGenome();
+                            genomeGeneration = protocol.getGeneration();
+                            genomeIndividual = protocol.getIndividual();
+                            waiting = false;
+                        } else if (protocol.getType() == Protocol.GENOME_BATCH
+                                && protocol.getLength() == protocol.getIndividual() * NB_WEIGHTS) {
+                            batchMode = true;
+                            batchSize = protocol.getIndividual();
+                            batchPos = 0;
+                            if (batch == null || batch.length < protocol.getLength()) batch = new float[protocol.getLength()];
+                            payload.get(batch, 0, protocol.getLength());
+                            System.arraycopy(batch, 0, weights, 0, NB_WEIGHTS);
+                            genomeGeneration = protocol.getGeneration();
+                        } else if (protocol.getType() == Protocol.TEST_GENOME && protocol.getLength() == NB_WEIGHTS) {
+                            // Set neural network weights
+                            payload.get(weights);
+                            TESTING = 2;
+                            System.out.println("Received best genome for testing.");
+                        } else {
+                            System.err.println("Unexpected frame of type " + protocol.getType());
                         }
-                        TESTING = 2;
-                        System.out.println("Received best genome for testing.");
-
                     }
                     receiver.nextPacket();
+                    if (unknownParent) {
+                        // Ask for full genomes and wait for them
+                        genomeCache.clear();
+                        emitter.send(protocol.encode(Protocol.UNKNOWN_PARENT, protocol.getGeneration(),
+                                protocol.getIndividual()));
+                        continue;
+                    }
                 }
             }
 
+            // Trials only start with a genome of the batch, or a genome received since the last trial
+            if (TESTING == 0 && step == 0 && (batchMode ? batchPos >= batchSize : waiting)) continue;
+
             if (TESTING == 0) step++;
+            if (TESTING == 0 && step == 1) {
+                trialEvent = new Events.Trial();
+                trialEvent.begin();
+                steps = 0;
+                abandoned = false;
+            }
 
             if (step < TRIAL_DURATION / TIME_STEP && TESTING == 0) {
                 // Drive robot
                 runTrial(true);
+                steps++;
+                if (RACING == 1 && raceLost()) {
+                    System.out.println("Individual " + indiv + " cannot reach the elite, trial ended at step " + step);
+                    extrapolateFitness();
+                    abandoned = true;
+                    step = TRIAL_DURATION / TIME_STEP;  // Fitness is sent at next step
+                }
+            } else if (TESTING == 0 && batchMode) {
+                // Tell supervisor to move the robot back to start and go on with the next genome straight away
+                endTrial(batchPos);
+                protocol.encode(Protocol.TRIAL_DONE, genomeGeneration, batchPos);
+                if (abandoned) protocol.setFlags(Protocol.TRIAL_DONE, Protocol.ESTIMATED);
+                emitter.send(protocol.frame(Protocol.TRIAL_DONE));
+                batchPos++;
+                if (batchPos == batchSize) sendBatchFitness();
+                step = 0;
+                trialsRun++;
+                if ((indiv + 1) < NN_POP_SIZE) indiv++;
             } else if (TESTING == 0) {
                 // Send message to indicate end of trial and send fitness values for each game - next actor will be called
-                float msg[] = new float[GAME_POP_SIZE + 1]; // sending flag too
-                for (i = 0; i < agentsFitness[indiv].length; i++) {
-                    msg[i] = (float) agentsFitness[indiv][i];
-                }
-                msg[GAME_POP_SIZE] = 0.0f;
-                byte[] msgInBytes = Util.float2ByteArray(msg);
-                emitter.send(msgInBytes);
-                // Reinitialize counter
+                endTrial(genomeIndividual);
+                FloatBuffer msg = protocol.start(Protocol.FITNESS, genomeGeneration, genomeIndividual, GAME_POP_SIZE);
+                for (i = 0; i < GAME_POP_SIZE; i++) msg.put((float) agentsFitness[indiv][i]);
+                if (abandoned) protocol.setFlags(Protocol.FITNESS, Protocol.ESTIMATED);
+                emitter.send(protocol.frame(Protocol.FITNESS));
+                // Reinitialize counter and wait for the next genome
                 step = 0;
+                waiting = true;
 
-                // If all individuals finished their trials
-                if ((indiv + 1) < NN_POP_SIZE) {
-                    indiv++;
-                } else {
-                    indiv = 0;
-                    byte[] endMsg = {1};
-                    emitter.send(endMsg);
-                    setGameFitness();
-                    resetActorsFitArrays();
-                }
+                // Supervisor decides when the generation is over and sends flag 1 on the games channel
+                trialsRun++;
+                if ((indiv + 1) < NN_POP_SIZE) indiv++;
             } else if (TESTING == 2) {
                 runTrial(false);
             }
         }
     }
 
+    /**
+     * Leaves batch mode: a single genome frame is run on its own, as in steady state evolution, whatever BATCH is.
+     * No trial starts until the genome of the frame is known to be whole.
+     */
+    private void singleGenome() {
+        batchMode = false;
+        batchSize = 0;
+        batchPos = 0;
+        waiting = true;
+    }
+
+    /**
+     * Records trial that just ended
+     * @param individual    Index of genome in its generation, or in its batch
+     */
+    private void endTrial(int individual) {
+        trialEvent.generation = genomeGeneration;
+        trialEvent.individual = individual;
+        trialEvent.steps = steps;
+        trialEvent.commit();
+        trialSteps.record(steps);
+    }
+
+    /**
+     * Sends fitness of every genome of the batch on every game in one frame.
+     * Genomes of a batch are run in order from the start of the generation, so genome i scored in row i.
+     */
+    private void sendBatchFitness() {
+        FloatBuffer msg = protocol.start(Protocol.BATCH_FITNESS, genomeGeneration, batchSize, batchSize * GAME_POP_SIZE);
+        for (int i = 0; i < batchSize; i++) {
+            for (int j = 0; j < GAME_POP_SIZE; j++) msg.put((float) agentsFitness[i][j]);
+        }
+        emitter.send(protocol.frame(Protocol.BATCH_FITNESS));
+    }
+
     /**
      * A single trial during which one action is performed.
      *
@@ -243,8 +375,6 @@ public class EpuckController extends Robot {
      */
     private void runTrial(boolean ifEvolved) throws Exception {
 
-        double[] outputs = new double[NB_OUTPUTS];
-
         updateSenorReadings();
         run_neural_network(states, outputs);
         speed[LEFT] = SPEED_RANGE * outputs[0];
@@ -300,6 +430,29 @@ public class EpuckController extends Robot {
         agentsFitness[indiv][2] += currentFitness2;
     }
 
+    /**
+     * Checks whether current individual can still reach the elite of the last generation. Every remaining step of
+     * the trial can add at most MAX_REWARD to the fitness on each game.
+     * @return  True if the individual stays below the elite cutoff on every game even with maximal rewards
+     */
+    private boolean raceLost() {
+        if (eliteCutoffs == null) return false;
+        int remaining = TRIAL_DURATION / TIME_STEP - 1 - step;
+        for (int i = 0; i < GAME_POP_SIZE; i++) {
+            if (agentsFitness[indiv][i] + remaining * MAX_REWARD[i] >= eliteCutoffs[i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Scales fitness of an abandoned trial to the full trial duration, so that it stays comparable with complete
+     * trials. The estimate never exceeds the upper bound that ended the trial.
+     */
+    private void extrapolateFitness() {
+        double scale = (TRIAL_DURATION / TIME_STEP - 1) / (double) step;
+        for (int i = 0; i < GAME_POP_SIZE; i++) agentsFitness[indiv][i] *= scale;
+    }
+
     /**
      * Reset all fitness arrays
      */
@@ -310,9 +463,7 @@ public class EpuckController extends Robot {
             for (j = 0; j < agentsFitness[i].length; j++) agentsFitness[i][j] = 0;
         }
         for (i = 0; i < gameFitness.length; i++) gameFitness[i] = 0;
-        for (i = 0; i < sortedfitnessGames.length; i++) {
-            for (j = 0; j < sortedfitnessGames[i].length; j++) sortedfitnessGames[i][j] = 0;
-        }
+        Ranking.identity(rankedGames, GAME_POP_SIZE);
         for (i = 0; i < actorFitPerGame.length; i++) {
             for (j = 0; j < actorFitPerGame[i].length; j++) actorFitPerGame[i][j] = 0;
         }
@@ -344,16 +495,16 @@ public class EpuckController extends Robot {
         for (i = 0; i < actorFitPerGame.length; i++) {
             for (j = 0; j < actorFitPerGame[i].length; j++) fitnessOfSolutions[j] += actorFitPerGame[i][j];
         }
-
-        FilesFunctions.logAllCompFit(out4, actorFitPerGame, generation);
     }
 
     /**
      * Fill in gameFitness array with each individual's score
+     * @param trialsNo  Number of trials run in this generation; individuals served from supervisor's cache are missing
      */
-    private void setGameFitness() {
+    private void setGameFitness(int trialsNo) {
         int i, j;
-        for (i = 0; i < agentsFitness.length; i++) {
+        if (trialsNo == 0) return;
+        for (i = 0; i < trialsNo; i++) {
             for (j = 0; j < agentsFitness[i].length; j++) {
                 actorFitPerGame[j][i] = agentsFitness[i][j];
             }
@@ -361,13 +512,33 @@ public class EpuckController extends Robot {
 
         // Normalise
         for(i=0; i< actorFitPerGame.length; i++) normaliseFitnessScore(actorFitPerGame[i], i);
-        // Log component fitness scores on each game
-        FilesFunctions.logAllCompFit(out4, actorFitPerGame, generation);
 
         //Calculate fitness of each game by computing variance of actor fitnesses on that game
         // Fitness of games doesn't need to be normalised as it's a variance over already normalised actors fitness
-        for (i = 0; i < gameFitness.length; i++) gameFitness[i] = Util.variance(actorFitPerGame[i]);
+        for (i = 0; i < gameFitness.length; i++) gameFitness[i] = Util.variance(actorFitPerGame[i], trialsNo);
 
+        storeFitness(trialsNo);
+    }
+
+    /**
+     * Stores fitness of every trial on each game (individual is the number of the trial) and fitness of each game
+     * (individual -1) as one block of the fitness store
+     * @param trialsNo  Number of trials run in this generation
+     */
+    private void storeFitness(int trialsNo) {
+        int i, j;
+        try {
+            if (fitnessStore == null) fitnessStore = FitnessStore.create(FITNESS, log);
+            for (i = 0; i < trialsNo; i++) {
+                for (j = 0; j < GAME_POP_SIZE; j++) {
+                    fitnessStore.add(generation, i, j, agentsFitness[i][j], actorFitPerGame[j][i]);
+                }
+            }
+            for (j = 0; j < GAME_POP_SIZE; j++) fitnessStore.add(generation, -1, j, gameFitness[j], gameFitness[j]);
+            fitnessStore.endBlock();
+        } catch (IOException e) {
+            System.err.println("Cannot store fitness of generation " + generation + ": " + e.getMessage());
+        }
     }
 
     /**
@@ -403,59 +574,6 @@ public class EpuckController extends Robot {
         }
     }
 
-    /**
-     * Sort whole population according to fitness score of each individual. Uses quickSort.
-     */
-    private void sortPopulation(double[][] sortedfitness, double[] fitness) {
-        int i;
-        //sort populationOfNN by fitness
-        for (i = 0; i < sortedfitness.length; i++) {
-            sortedfitness[i][0] = fitness[i];   //fitness score
-            sortedfitness[i][1] = i;            //keep index
-        }
-        quickSort(sortedfitness, 0, sortedfitness.length - 1);
-    }
-
-    /**
-     * Standard fast algorithm to sort populationOfNN by fitness
-     *
-     * @param fitness Array that stores fitness and index of each individual.
-     * @param left    Min index of the array
-     * @param right   Max index of the array
-     */
-    private void quickSort(double fitness[][], int left, int right) {
-        double[] pivot = new double[2];
-        int l_hold, r_hold;
-
-        l_hold = left;
-        r_hold = right;
-        pivot[0] = fitness[left][0];
-        pivot[1] = fitness[left][1];
-        while (left < right) {
-            while ((fitness[right][0] <= pivot[0]) && (left < right))
-                right--;
-            if (left != right) {
-                fitness[left][0] = fitness[right][0];
-                fitness[left][1] = fitness[right][1];
-                left++;
-            }
-            while ((fitness[left][0] >= pivot[0]) && (left < right))
-                left++;
-            if (left != right) {
-                fitness[right][0] = fitness[left][0];
-                fitness[right][1] = fitness[left][1];
-                right--;
-            }
-        }
-        fitness[left][0] = pivot[0];
-        fitness[left][1] = pivot[1];
-        pivot[0] = left;
-        left = l_hold;
-        right = r_hold;
-        if (left < (int) pivot[0]) quickSort(fitness, left, (int) pivot[0] - 1);
-        if (right > (int) pivot[0]) quickSort(fitness, (int) pivot[0] + 1, right);
-    }
-
     /**
      * Based on the fitness of the last generation, generate a new games for the next generation.
      */
@@ -463,7 +581,7 @@ public class EpuckController extends Robot {
 
         Game[] newpop = new Game[GAME_POP_SIZE];
         for (int i = 0; i < newpop.length; i++) {
-            newpop[i] = new Game(true, NB_CONSTANTS);
+            newpop[i] = new Game(true, NB_CONSTANTS, random);
         }
         double elitism_counter = GAME_POP_SIZE * ELITISM_RATIO;
         int i, j;
@@ -474,7 +592,7 @@ public class EpuckController extends Robot {
             // The elitism_counter best individuals are simply copied to the new populationOfNN
             if (i < elitism_counter) {
                 for (j = 0; j < NB_CONSTANTS; j++)
-                    newpop[i].setConstants(j, populationOfGames[(int) sortedfitnessGames[i][1]].getConstants()[j]);
+                    newpop[i].setConstants(j, populationOfGames[rankedGames[i]].getConstants()[j]);
             }
             // The other individuals are generated through the crossover of two parents
             else {
@@ -489,32 +607,25 @@ public class EpuckController extends Robot {
                     do {
                         ind2 = (int) (elitism_counter + random.nextFloat() * (GAME_POP_SIZE * REPRODUCTION_RATIO - elitism_counter));
                     } while (ind1 == ind2);
-                    ind1 = (int) sortedfitnessGames[ind1][1];
-                    ind2 = (int) sortedfitnessGames[ind2][1];
+                    ind1 = rankedGames[ind1];
+                    ind2 = rankedGames[ind2];
                     newpop[i].crossover(ind1, ind2, newpop[i], NB_CONSTANTS, populationOfGames);
                 } else { //if no crossover was done, just copy selected individual directly
                     for (j = 0; j < NB_CONSTANTS; j++)
-                        newpop[i].setConstants(j, populationOfGames[(int) sortedfitnessGames[ind1][1]].getConstants()[j]);
+                        newpop[i].setConstants(j, populationOfGames[rankedGames[ind1]].getConstants()[j]);
                 }
             }
         }
 
-        // Mutate new populationOfGames and copy back to pop
+        // Copy new populationOfGames back to pop and mutate it
         for (i = 0; i < GAME_POP_SIZE; i++) {
-            if (i < elitism_counter) { //no mutation for elitists
-                for (j = 0; j < NB_CONSTANTS; j++) {
-                    populationOfGames[i].copy(newpop[i]);
-                }
-            } else { // Mutate others with probability per gene
-                for (j = 0; j < NB_CONSTANTS; j++)
-                    if (random.nextFloat() < MUTATION_PROBABILITY)
-                        populationOfGames[i].setConstants(j, populationOfGames[i].mutate(GENE_MIN, GENE_MAX, newpop[i].getConstants()[j], MUTATION_SIGMA));
-                    else
-                        populationOfGames[i].copy(newpop[i]);
+            populationOfGames[i].copy(newpop[i]);
+            if (i >= elitism_counter) { // Mutate others with probability per gene, no mutation for elitists
+                mutation.mutate(populationOfGames[i].getConstants(), 0, NB_CONSTANTS, random);
             }
-            // Reset fitness
-            resetAllFitnessArrays();
         }
+        // Reset fitness
+        resetAllFitnessArrays();
     }
 
 
@@ -531,64 +642,15 @@ public class EpuckController extends Robot {
             if (states[j] > maxIRActivation) maxIRActivation = states[j];
         }
         // Update floor colour readings
-        for (int i = ps.length; i < NB_FLOOR_SENSORS; i++) {
+        for (int i = 0; i < NB_FLOOR_SENSORS; i++) {
             fs_value[i] = fs[i].getValue();
-            states[i] = fs_value[i];
+            states[NB_PROXIMITY_SENSORS + i] = fs_value[i];
         }
 
     }
 
     private void run_neural_network(double[] inputs, double[] outputs) {
-        int i, j;
-        int weight_counter = 0;
-
-        if (NB_HIDDEN_NEURONS > 0) {
-            double[] hidden_neuron_out = new double[NB_HIDDEN_NEURONS];
-
-            for (i = 0; i < NB_HIDDEN_NEURONS; i++) {
-                float sum = 0;
-                for (j = 0; j < NB_INPUTS; j++) {
-                    sum += inputs[j] * weights[weight_counter];
-                    weight_counter++;
-                }
-                hidden_neuron_out[i] = Math.tanh(sum + weights[weight_counter]);
-                weight_counter++;
-            }
-
-            for (i = 0; i < NB_OUTPUTS; i++) {
-                float sum = 0;
-                for (j = 0; j < NB_HIDDEN_NEURONS; j++) {
-                    sum += hidden_neuron_out[j] * weights[weight_counter];
-                    weight_counter++;
-                }
-                outputs[i] = Math.tanh(sum + weights[weight_counter]);
-                weight_counter++;
-            }
-        } else {
-
-            for (i = 0; i < NB_OUTPUTS; i++) {
-                double sum = 0.0;
-                for (j = 0; j < NB_INPUTS; j++) {
-                    sum += inputs[j] * weights[weight_counter];
-                    weight_counter++;
-                }
-                if (Double.isNaN(sum)) sum = bound(sum);
-                outputs[i] = Math.tanh(sum + weights[weight_counter]);
-                weight_counter++;
-            }
-        }
-    }
-
-    private double bound(double d) {
-        double TOO_SMALL = -1.0E19;
-        double TOO_BIG = 1.0E19;
-        if (d < TOO_SMALL) {
-            return TOO_SMALL;
-        } else if (d > TOO_BIG) {
-            return TOO_BIG;
-        } else {
-            return d;
-        }
+        network.run(weights, inputs, outputs);
     }
 
     private void initialiseGames(Game[] games) {
@@ -630,18 +692,15 @@ public class EpuckController extends Robot {
 
         // Games
         populationOfGames = new Game[GAME_POP_SIZE];
-        for (i = 0; i < GAME_POP_SIZE; i++) populationOfGames[i] = new Game(false, NB_CONSTANTS);
+        for (i = 0; i < GAME_POP_SIZE; i++) populationOfGames[i] = new Game(false, NB_CONSTANTS, random);
         initialiseGames(populationOfGames);
 
         fitnessOfSolutions = new double[NN_POP_SIZE];
         for (i = 0; i < GAME_POP_SIZE; i++) fitnessOfSolutions[i] = 0.0;
 
-        sortedfitnessGames = new double[GAME_POP_SIZE][2];
-        for (i = 0; i < GAME_POP_SIZE; i++) {
-            for (j = 0; j < 2; j++) {
-                sortedfitnessGames[i][j] = 0.0;
-            }
-        }
+        rankedGames = new int[GAME_POP_SIZE];
+        rankingScratch = new int[GAME_POP_SIZE];
+        Ranking.identity(rankedGames, GAME_POP_SIZE);
         gameFitness = new double[GAME_POP_SIZE];
         for (i = 0; i < GAME_POP_SIZE; i++) gameFitness[i] = 0.0f;
 
@@ -708,65 +767,17 @@ public class EpuckController extends Robot {
         gameReceiver.enable(TIME_STEP);
 
         weights = new float[NB_WEIGHTS];
+        genomeCache = new GenomeCache(GENOME_CACHE_CAPACITY, NB_WEIGHTS);
+        network = new FeedForward(NB_INPUTS, NB_OUTPUTS, NB_HIDDEN_NEURONS);
 
         // Logging
-        try {
-            file1 = new FileWriter("out/results.txt");
-        } catch (IOException e) {
-            System.out.println("Cannot open results.txt file.");
-        }
+        resultsFile = log.open("out/results.txt", false);
+        log.text(resultsFile, "generation , Average fitness, Worst fitness, Best fitness");
 
-        out1 = new BufferedWriter(file1);
-        try {
-            out1.write("generation , Average fitness, Worst fitness, Best fitness");
-            out1.write("\n");
-
-        } catch (IOException e) {
-            System.err.println("" + e.getMessage());
-        }
-
-        try {
-            file2 = new FileWriter("out/results:fitness_games.txt");
-        } catch (IOException e) {
-            System.err.println("Cannot write to file: fitness_games.txt");
-        }
-        out2 = new BufferedWriter(file2);
-        try {
-            out2.write("Generation, ");
-            for (i = 0; i < GAME_POP_SIZE; i++) out2.write("Game " + i + ", ");
-            out2.write("\n");
-        } catch (IOException e) {
-            System.out.println("Error writing to genome.txt: " + e.getMessage());
-        }
-
-        try {
-            file3 = new FileWriter("out/results:bestgenome_games.txt");
-        } catch (IOException e) {
-            System.err.println("Cannot open bestgenome_games.txt file.");
-        }
-
-        out3 = new BufferedWriter(file3);
-
-        try {
-            file4 = new FileWriter("out/results:comp_fitness.txt");
-        } catch (IOException e) {
-            System.err.println("Cannot open comp_fitness.txt file.");
-        }
-
-        out4 = new BufferedWriter(file4);
-
-        try {
-            file5 = new FileWriter("out/all_games_genomes.txt");
-        } catch (IOException e) {
-            System.err.println("Cannot open all_games_genomes.txt file.");
-        }
-
-        out5 = new BufferedWriter(file5);
-        try {
-            FilesFunctions.logAllGameGenomes(out5, generation, populationOfGames);
-        } catch (IOException e) {
-            System.err.println(e.getMessage());
-        }
+        bestFile = log.open("out/results:bestgenome_games.txt", false);
+        gamesGenomesFile = log.open("out/results:games_genomes.txt", true);
+        allGenomesFile = log.open("out/all_games_genomes.txt", false);
+        FilesFunctions.logAllGameGenomes(log, allGenomesFile, generation, populationOfGames);
         System.out.println("e-puck has been initialised.");
     }
 
@@ -16,9 +16,15 @@ public class Game {
     private float [] constants;    // Constants used in evolution
 
 
-    Random rand = new Random();
+    Random rand;                   // Stream of the evolution the game belongs to
 
-    public Game(boolean init, int constantsNo) {
+    /**
+     * @param init          If true, constants are initialised randomly
+     * @param constantsNo   Number of constants
+     * @param rand          Source of randomness, shared with the rest of the evolution
+     */
+    public Game(boolean init, int constantsNo, Random rand) {
+        this.rand = rand;
         constants = new float[constantsNo];
         if(init) initialise();
     }
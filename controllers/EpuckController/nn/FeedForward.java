@@ -0,0 +1,129 @@
+package nn;
+
+/**
+ * Forward pass of the e-puck's feedforward neural network, shared by the robot controller and headless evaluators.
+ * Weights use the same flat layout as NeuralNetwork: every hidden neuron stores its input weights followed by its
+ * bias, then every output neuron stores its hidden weights followed by its bias (inputs*hidden + hidden +
+ * hidden*outputs + outputs genes). Without hidden layer every output neuron stores its input weights and bias.
+ * All scratch buffers are allocated once in the constructor, so evaluating a network produces no garbage.
+ */
+public class FeedForward {
+
+    private static final double TOO_SMALL = -1.0E19;
+    private static final double TOO_BIG = 1.0E19;
+
+    private int inputsNo;
+    private int outputsNo;
+    private int hiddenNo;
+    private int weightsNo;
+    private double[] hidden;                        // Scratch buffer for hidden neurons' activations
+
+    public FeedForward(int inputsNo, int outputsNo, int NB_HIDDEN_NEURONS) {
+        this.inputsNo = inputsNo;
+        this.outputsNo = outputsNo;
+        this.hiddenNo = NB_HIDDEN_NEURONS;
+        if (NB_HIDDEN_NEURONS == 0) this.weightsNo = inputsNo * outputsNo + outputsNo;
+        else this.weightsNo = inputsNo * NB_HIDDEN_NEURONS + NB_HIDDEN_NEURONS + NB_HIDDEN_NEURONS * outputsNo + outputsNo;
+        this.hidden = new double[Math.max(NB_HIDDEN_NEURONS, 1)];
+    }
+
+    /**
+     * Propagates one sensor vector through one genome
+     * @param weights       Array holding the genome
+     * @param wOffset       Index of genome's first weight in weights array
+     * @param inputs        Array holding the sensor vector
+     * @param inOffset      Index of first input in inputs array
+     * @param outputs       Array the motor commands are written to
+     * @param outOffset     Index of first output in outputs array
+     */
+    public void run(float[] weights, int wOffset, double[] inputs, int inOffset, double[] outputs, int outOffset) {
+        int i, j;
+        int w = wOffset;
+
+        if (hiddenNo > 0) {
+            for (i = 0; i < hiddenNo; i++) {
+                double sum = 0;
+                for (j = 0; j < inputsNo; j++) {
+                    sum += inputs[inOffset + j] * weights[w];
+                    w++;
+                }
+                hidden[i] = Math.tanh(sum + weights[w]);
+                w++;
+            }
+
+            for (i = 0; i < outputsNo; i++) {
+                double sum = 0;
+                for (j = 0; j < hiddenNo; j++) {
+                    sum += hidden[j] * weights[w];
+                    w++;
+                }
+                outputs[outOffset + i] = Math.tanh(sum + weights[w]);
+                w++;
+            }
+        } else {
+            for (i = 0; i < outputsNo; i++) {
+                double sum = 0;
+                for (j = 0; j < inputsNo; j++) {
+                    sum += inputs[inOffset + j] * weights[w];
+                    w++;
+                }
+                if (Double.isNaN(sum)) sum = bound(sum);
+                outputs[outOffset + i] = Math.tanh(sum + weights[w]);
+                w++;
+            }
+        }
+    }
+
+    /**
+     * Propagates a single sensor vector through a genome stored at the beginning of weights array
+     * @param weights   Genome
+     * @param inputs    Sensor vector
+     * @param outputs   Array the motor commands are written to
+     */
+    public void run(float[] weights, double[] inputs, double[] outputs) {
+        run(weights, 0, inputs, 0, outputs, 0);
+    }
+
+    /**
+     * Evaluates a batch of genomes, each one against its own sensor vector. Genome k occupies
+     * genomes[k * weightsNo ...], its inputs are inputs[k * inputsNo ...] and its motor commands are written to
+     * outputs[k * outputsNo ...].
+     * @param genomes       Contiguous block of genomes
+     * @param inputs        Contiguous block of sensor vectors
+     * @param outputs       Contiguous block receiving the motor commands
+     * @param batchSize     Number of genomes to evaluate
+     */
+    public void runBatch(float[] genomes, double[] inputs, double[] outputs, int batchSize) {
+        for (int k = 0; k < batchSize; k++) {
+            run(genomes, k * weightsNo, inputs, k * inputsNo, outputs, k * outputsNo);
+        }
+    }
+
+    private double bound(double d) {
+        if (d < TOO_SMALL) {
+            return TOO_SMALL;
+        } else if (d > TOO_BIG) {
+            return TOO_BIG;
+        } else {
+            return d;
+        }
+    }
+
+    /* Getters */
+
+    public int getWeightsNo() {
+        return weightsNo;
+    }
+
+    public int getInputsNo() {
+        return inputsNo;
+    }
+
+    public int getOutputsNo() {
+        return outputsNo;
+    }
+
+    public int getHiddenNo() {
+        return hiddenNo;
+    }
+}
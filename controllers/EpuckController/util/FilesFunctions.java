@@ -2,123 +2,127 @@ package util;
 
 import games.Game;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
 
+/**
+ * Log records of the evolution of games. Methods only queue numbers in an AsyncLog; the formats below turn them
+ * into text on the writer thread.
+ */
 public class FilesFunctions {
 
+    // Header, generation and absolute best index, one constant per line
+    private static final AsyncLog.Format BEST = new AsyncLog.Format() {
+        public void write(Writer out, int generation, int absBestInd, double[] constants, int length)
+                throws IOException {
+            out.write("generation, absolute best ind index, weights");
+            out.write("\n");
+            out.write(generation + " " + absBestInd);
+            out.write("\n");
+            for (int j = 0; j < length; j++) {
+                out.write(Float.toString((float) constants[j]));
+                out.write("\n");
+            }
+            out.write("\n");
+        }
+    };
+
+    // Generation followed by ", " separated values
+    private static final AsyncLog.Format FITNESS_CASES = new AsyncLog.Format() {
+        public void write(Writer out, int generation, int arg, double[] values, int length) throws IOException {
+            out.write(Integer.toString(generation));
+            for (int i = 0; i < length; i++) {
+                out.write(", ");
+                out.write(Double.toString(values[i]));
+            }
+            out.write("\n");
+        }
+    };
+
+    // Rows of constants each followed by a comma, then a blank line
+    private static final AsyncLog.Format LAST_GENERATION = new AsyncLog.Format() {
+        public void write(Writer out, int arg, int columns, double[] values, int length) throws IOException {
+            for (int i = 0; i < length; i += columns) {
+                for (int j = 0; j < columns; j++) {
+                    out.write(Float.toString((float) values[i + j]));
+                    out.write(",");
+                }
+                out.write("\n");
+            }
+            out.write("\n");
+        }
+    };
+
+    // Generation header, then rows of constants each preceded by a comma, then a blank line
+    private static final AsyncLog.Format GAME_GENOMES = new AsyncLog.Format() {
+        public void write(Writer out, int generation, int columns, double[] values, int length) throws IOException {
+            out.write("Generation: " + generation + "\n");
+            for (int i = 0; i < length; i += columns) {
+                for (int j = 0; j < columns; j++) {
+                    out.write(",");
+                    out.write(Float.toString((float) values[i + j]));
+                }
+                out.write("\n");
+            }
+            out.write("\n");
+        }
+    };
+
     /**
      *
-     * @param out3
+     * @param log
+     * @param file
      * @param generation
      * @param NB_GAMES
      * @param absBestInd
      * @param population
      */
-    public static void logBest(BufferedWriter out3, int generation, int NB_GAMES, int absBestInd, Game[] population) {
+    public static void logBest(AsyncLog log, int file, int generation, int NB_GAMES, int absBestInd, Game[] population) {
 
         //best game
-        try {
-            out3.write("generation, absolute best ind index, weights");
-            out3.write("\n");
-            out3.write("" + generation + " " + absBestInd);
-            out3.write("\n");
-            for (int j = 0; j < NB_GAMES; j++){
-                out3.write("" + population[absBestInd].getConstants()[j]);
-                out3.write("\n");
-            }
-            out3.write("\n");
-            out3.flush();
-        } catch (IOException e) {
-            System.err.println("Buffer Error: " + e.getMessage());
-        }
-
-    }
-
-    public static void logAllCompFit(BufferedWriter out, double [][] compFit, int generation){
-
-        try{
-            out.write(""+generation);
-            out.newLine();
-            for(int i=0; i<compFit.length; i++){
-                for(int j=0; j< compFit[i].length; j++){
-                    out.write(""+compFit[i][j]+", ");
-                }
-                out.newLine();
-            }
-
-            out.flush();
-        }   catch (IOException e){
-            System.err.println("Buffer error: "+e.getMessage());
-        }
+        log.append(file, BEST, generation, absBestInd, population[absBestInd].getConstants(), 0, NB_GAMES);
     }
 
      /**
      * Write average, worst and best fitnesses of each generation.
-     * @param out1
+     * @param log
+     * @param file
      * @param avgFit
      * @param generation
      * @param bestFit
      * @param minFit
      **/
-    public static void logFitnessCases(BufferedWriter out1, double avgFit, int generation, double bestFit, double minFit) {
+    public static void logFitnessCases(AsyncLog log, int file, double avgFit, int generation, double bestFit, double minFit) {
 
         //fitness
-        try {
-            out1.write("" + generation + ", " + avgFit + ", " +minFit +", "+ bestFit);
-            out1.write("\n");
-            out1.flush();
-        } catch (IOException e) {
-            System.err.println("Buffer Error: " + e.getMessage());
-        }
+        if (!log.begin(file, FITNESS_CASES, generation, 0, 3)) return;
+        log.put(avgFit);
+        log.put(minFit);
+        log.put(bestFit);
+        log.end();
     }
 
-    public static void logCompFitnesses(BufferedWriter out2, int generation, double[] gameFitness) {
-        try{
-            out2.write(""+generation+", ");
-            for(int i=0; i<gameFitness.length; i++) out2.write(""+gameFitness[i]+", ");
-            out2.write("\n");
-            out2.flush();
-        } catch (IOException ioe){
-            System.err.println("Buffer error: "+ioe.getMessage());
-        }
+    /**
+     * Writes constants of every game - overwrites previous entry.
+     * @param log
+     * @param file      Handle of a file opened for overwriting
+     * @param population
+     */
+    public static void logLastGeneration(AsyncLog log, int file, Game[] population) {
+        putGames(log, file, LAST_GENERATION, 0, population);
     }
 
-    public static void logLastGeneration(Game[] population) throws IOException {
-
-        FileWriter file = new FileWriter("out/results:games_genomes.txt");
-
-        BufferedWriter out = new BufferedWriter(file);
-
-        try{
-            for(int i=0; i< population.length; i++){
-                for (int j=0; j<population[i].getConstants().length; j++){
-                    out.write(""+population[i].getConstants()[j]+",");
-                }
-                out.write("\n");
-            }
-            out.write("\n");
-            out.flush();
-        }   catch(IOException e){
-            System.err.println("Buffer error: "+e.getMessage());
-        }
+    public static void logAllGameGenomes(AsyncLog log, int file, int generation, Game[] population) {
+        putGames(log, file, GAME_GENOMES, generation, population);
     }
 
-    public static void logAllGameGenomes(BufferedWriter out, int generation, Game[] population) throws IOException {
-        out.write("Generation: "+generation+"\n");
-        try{
-            for(int i=0; i< population.length; i++){
-                for (int j=0; j<population[i].getConstants().length; j++){
-                    out.write(","+population[i].getConstants()[j]);
-                }
-                out.write("\n");
-            }
-            out.write("\n");
-            out.flush();
-        }   catch(IOException e){
-            System.err.println("Buffer error: "+e.getMessage());
-        }
+    /**
+     * Queues constants of all games as one record of rows
+     */
+    private static void putGames(AsyncLog log, int file, AsyncLog.Format format, int generation, Game[] population) {
+        int columns = population.length == 0 ? 0 : population[0].getConstants().length;
+        if (!log.begin(file, format, generation, columns, population.length * columns)) return;
+        for(int i=0; i< population.length; i++) log.put(population[i].getConstants(), 0, columns);
+        log.end();
     }
 }
-
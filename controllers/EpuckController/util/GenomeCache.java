@@ -0,0 +1,146 @@
+package util;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Recently transmitted genomes, kept by the robot to rebuild genomes sent as patches and mirrored by the supervisor
+ * to know which parents the robot still holds (a copy lives in each controller). Both sides store every genome in
+ * the order it was transmitted and evict the oldest one, so the two caches hold the same genomes as long as no
+ * message is lost.
+ * A genome is transmitted as a record of floats: id, parent id, n, followed by
+ *   n = genesNo values if parent id is -1 (full genome), or
+ *   n pairs (gene index, value) of genes that differ from the parent (patch).
+ * A patch is only sent when the parent is cached and the patch is smaller than the full genome.
+ */
+public class GenomeCache {
+
+    private int capacity;
+    private int genesNo;
+    private LinkedHashMap<Integer, float[]> genomes;
+    private ArrayList<float[]> spare = new ArrayList<float[]>();    // Evicted rows, reused for new genomes
+    private int patches, fullGenomes;
+
+    /**
+     * @param capacity  Number of genomes kept
+     * @param genesNo   Number of genes of a genome
+     */
+    public GenomeCache(int capacity, int genesNo) {
+        this.capacity = capacity;
+        this.genesNo = genesNo;
+        genomes = new LinkedHashMap<Integer, float[]>(capacity * 4 / 3 + 1, 0.75f, false) {
+            protected boolean removeEldestEntry(Map.Entry<Integer, float[]> eldest) {
+                if (size() <= GenomeCache.this.capacity) return false;
+                spare.add(eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    /**
+     * @return  Maximal length of a record in floats
+     */
+    public int maxRecordLength() {
+        return 3 + genesNo;
+    }
+
+    /**
+     * Writes the record of a genome, as a patch if possible, and caches the genome
+     * @param id        Identifier of genome
+     * @param parent    Identifier of the genome it was bred from, -1 if none
+     * @param genes     Array holding the genome
+     * @param offset    Position of first gene in genes
+     * @param out       Array the record is written to
+     * @param position  Position of the record in out
+     * @return          Position following the record
+     */
+    public int encode(int id, int parent, float[] genes, int offset, float[] out, int position) {
+        int i, n = 0;
+        float[] base = parent < 0 ? null : genomes.get(parent);
+        if (base != null) {
+            for (i = 0; i < genesNo && 2 * n < genesNo; i++) {
+                if (Float.floatToIntBits(base[i]) != Float.floatToIntBits(genes[offset + i])) n++;
+            }
+        }
+
+        out[position] = id;
+        if (base != null && 2 * n < genesNo) {
+            out[position + 1] = parent;
+            out[position + 2] = n;
+            int p = position + 3;
+            for (i = 0; i < genesNo; i++) {
+                if (Float.floatToIntBits(base[i]) != Float.floatToIntBits(genes[offset + i])) {
+                    out[p++] = i;
+                    out[p++] = genes[offset + i];
+                }
+            }
+            patches++;
+            store(id, genes, offset);
+            return p;
+        }
+        out[position + 1] = -1;
+        out[position + 2] = genesNo;
+        System.arraycopy(genes, offset, out, position + 3, genesNo);
+        fullGenomes++;
+        store(id, genes, offset);
+        return position + 3 + genesNo;
+    }
+
+    /**
+     * Reads the record of a genome and caches the genome. The whole record is consumed even if it cannot be used.
+     * @param in        Buffer positioned at the record
+     * @param genes     Array the genome is written to
+     * @param offset    Position of first gene in genes
+     * @return          Identifier of genome, or -1 if it is a patch against a genome that is not cached
+     */
+    public int decode(FloatBuffer in, float[] genes, int offset) {
+        int id = (int) in.get();
+        int parent = (int) in.get();
+        int n = (int) in.get();
+        if (parent < 0) {
+            in.get(genes, offset, genesNo);
+            fullGenomes++;
+        } else {
+            float[] base = genomes.get(parent);
+            if (base == null) {
+                in.position(in.position() + 2 * n);
+                return -1;
+            }
+            System.arraycopy(base, 0, genes, offset, genesNo);
+            for (int i = 0; i < n; i++) {
+                int gene = (int) in.get();
+                genes[offset + gene] = in.get();
+            }
+            patches++;
+        }
+        store(id, genes, offset);
+        return id;
+    }
+
+    private void store(int id, float[] genes, int offset) {
+        float[] row = genomes.get(id);
+        if (row == null) {
+            row = spare.isEmpty() ? new float[genesNo] : spare.remove(spare.size() - 1);
+            genomes.put(id, row);
+        }
+        System.arraycopy(genes, offset, row, 0, genesNo);
+    }
+
+    /**
+     * Forgets all genomes, after which every genome is sent in full
+     */
+    public void clear() {
+        spare.addAll(genomes.values());
+        genomes.clear();
+    }
+
+    public int getPatches() {
+        return patches;
+    }
+
+    public int getFullGenomes() {
+        return fullGenomes;
+    }
+}
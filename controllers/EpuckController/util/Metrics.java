@@ -0,0 +1,203 @@
+package util;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * In-process registry of counters and histograms (a copy lives in each controller). Recording is lock free, so it
+ * may be done from any thread. Histograms have one bucket per power of two, which is enough to tell p50 from p99
+ * within a factor of two. The registry is dumped as text to a file, e.g. at the end of every generation, or served on
+ * http://localhost:port/metrics.
+ */
+public class Metrics {
+
+    /**
+     * Number of times something happened
+     */
+    public static class Counter {
+        private final String name;
+        private final AtomicLong value = new AtomicLong();
+
+        private Counter(String name) {
+            this.name = name;
+        }
+
+        public void increment() {
+            value.incrementAndGet();
+        }
+
+        public void add(long n) {
+            value.addAndGet(n);
+        }
+
+        public long get() {
+            return value.get();
+        }
+    }
+
+    /**
+     * Distribution of values, e.g. latencies in ns; bucket b counts values in [2^(b-1), 2^b)
+     */
+    public static class Histogram {
+        private final String name;
+        private final AtomicLongArray buckets = new AtomicLongArray(65);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong sum = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        private Histogram(String name) {
+            this.name = name;
+        }
+
+        /**
+         * @param value     Value to record, negative values are recorded as 0
+         */
+        public void record(long value) {
+            if (value < 0) value = 0;
+            buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(value));
+            count.incrementAndGet();
+            sum.addAndGet(value);
+            long m;
+            while (value > (m = max.get()) && !max.compareAndSet(m, value)) ;
+        }
+
+        /**
+         * @param q     Quantile in [0, 1]
+         * @return      Upper bound of the bucket holding quantile q
+         */
+        public long quantile(double q) {
+            long n = count.get(), rank = (long) Math.ceil(q * n), seen = 0;
+            if (n == 0) return 0;
+            for (int b = 0; b < 65; b++) {
+                seen += buckets.get(b);
+                if (seen >= rank) return b == 0 ? 0 : Math.min(max.get(), b == 64 ? Long.MAX_VALUE : (1L << b) - 1);
+            }
+            return max.get();
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        public double getMean() {
+            long n = count.get();
+            return n == 0 ? 0 : (double) sum.get() / n;
+        }
+
+        public long getMax() {
+            return max.get();
+        }
+    }
+
+    private static final ArrayList<Counter> counters = new ArrayList<Counter>();
+    private static final ArrayList<Histogram> histograms = new ArrayList<Histogram>();
+    private static HttpServer server;
+
+    private Metrics() {
+    }
+
+    /**
+     * @param name  Name of counter
+     * @return      Counter registered under name, created if needed
+     */
+    public static synchronized Counter counter(String name) {
+        for (Counter c : counters) {
+            if (c.name.equals(name)) return c;
+        }
+        Counter c = new Counter(name);
+        counters.add(c);
+        return c;
+    }
+
+    /**
+     * @param name  Name of histogram
+     * @return      Histogram registered under name, created if needed
+     */
+    public static synchronized Histogram histogram(String name) {
+        for (Histogram h : histograms) {
+            if (h.name.equals(name)) return h;
+        }
+        Histogram h = new Histogram(name);
+        histograms.add(h);
+        return h;
+    }
+
+    /**
+     * Writes every counter as "name value" and every histogram as "name count mean p50 p99 max", one per line
+     * @param out   Writer the metrics are written to
+     */
+    public static synchronized void dump(Writer out) throws IOException {
+        for (Counter c : counters) {
+            out.write(c.name + " " + c.get() + "\n");
+        }
+        for (Histogram h : histograms) {
+            out.write(h.name + " count=" + h.getCount() + " mean=" + (long) h.getMean() + " p50=" + h.quantile(0.5)
+                    + " p99=" + h.quantile(0.99) + " max=" + h.getMax() + "\n");
+        }
+        out.flush();
+    }
+
+    /**
+     * Replaces contents of a file with current metrics. Opens the file on the calling thread, so loggers hand it to
+     * the writer thread of their AsyncLog.
+     * @param path  Path of file
+     */
+    public static void dump(String path) {
+        try {
+            Writer out = new BufferedWriter(new FileWriter(path));
+            dump(out);
+            out.close();
+        } catch (IOException e) {
+            System.err.println("Cannot write metrics to " + path + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Serves current metrics on http://localhost:port/metrics until stop() is called
+     * @param port  Port on the loopback interface
+     */
+    public static synchronized void serve(int port) {
+        if (server != null) return;
+        try {
+            server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+            server.createContext("/metrics", new HttpHandler() {
+                public void handle(HttpExchange exchange) throws IOException {
+                    StringWriter text = new StringWriter();
+                    dump(text);
+                    byte[] body = text.toString().getBytes("UTF-8");
+                    exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+                    exchange.sendResponseHeaders(200, body.length);
+                    OutputStream out = exchange.getResponseBody();
+                    out.write(body);
+                    out.close();
+                }
+            });
+            server.start();
+        } catch (IOException e) {
+            System.err.println("Cannot serve metrics on port " + port + ": " + e.getMessage());
+            server = null;
+        }
+    }
+
+    /**
+     * Stops serving metrics; the server thread would otherwise keep the JVM alive
+     */
+    public static synchronized void stop() {
+        if (server == null) return;
+        server.stop(0);
+        server = null;
+    }
+}
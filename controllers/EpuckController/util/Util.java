@@ -57,11 +57,23 @@ public class Util {
      * @return          Returns variance - double
      */
     public static double variance(double[] values) {
-        double mean = mean(values);
+        return variance(values, values.length);
+    }
+
+    /**
+     * Method to calculate variance of the first n values
+     * @param values    An array of doubles
+     * @param n         Number of values to take into account
+     * @return          Returns variance - double
+     */
+    public static double variance(double[] values, int n) {
+        double sum = 0;
+        for (int i = 0; i < n; i++) sum += values[i];
+        double mean = sum / n;
         double temp = 0;
-        for (double a : values)
-            temp += (mean - a) * (mean - a);
-        return temp / values.length;
+        for (int i = 0; i < n; i++)
+            temp += (mean - values[i]) * (mean - values[i]);
+        return temp / n;
     }
 
     /**
@@ -105,23 +117,8 @@ public class Util {
      * @return          Returns array of floats
      */
     public static float[] bytes2FloatArray(byte[] values){
-        int p=0, r=0;
         float[] floats = new float[values.length/4];
-         byte[] weight = new byte[4];
-        for(int i=0; i< values.length; i++){
-            if(p<4){
-                weight[p] = values[i];
-                p++;
-            }
-            else {
-                p=0;
-                float fl = ByteBuffer.wrap(weight).getFloat();
-                floats[r] = fl;
-                weight[p] = values[i];
-                p++;
-                r++;
-            }
-        }
+        ByteBuffer.wrap(values).asFloatBuffer().get(floats);
         return floats;
     }
 
@@ -132,19 +129,8 @@ public class Util {
      */
     public static byte [] float2ByteArray (float[] values)
     {
-        byte[][] b = new byte[values.length][4];
-
-        for(int i=0; i<values.length; i++){
-            b[i] = ByteBuffer.allocate(4).putFloat(values[i]).array();
-        }
-        byte[] result = new byte[b.length*4];
-        int counter = 0;
-        for(int i=0; i<b.length; i++){
-            for(int j=0; j<b[i].length; j++){
-                result[counter] = b[i][j];
-                counter++;
-            }
-        }
+        byte[] result = new byte[values.length * 4];
+        ByteBuffer.wrap(result).asFloatBuffer().put(values);
         return result;
     }
-}
\ No newline at end of file
+}
@@ -1,10 +1,19 @@
 import com.cyberbotics.webots.controller.*;
-import nn.NeuralNetwork;
-import utils.FilesFunctions;
-import utils.Util;
+import evolution.EvolutionEngine;
+import evolution.EvolutionLogger;
+import evolution.FitnessCache;
+import evolution.GenomeArchive;
+import evolution.Migration;
+import evolution.Population;
+import utils.Events;
+import utils.GenomeCache;
+import utils.Metrics;
+import utils.Protocol;
+import utils.Rng;
+import utils.TrajectoryRecorder;
 
 import java.io.*;
-import java.util.Random;
+import java.nio.FloatBuffer;
 
 /**
  * Created with IntelliJ IDEA.
@@ -13,7 +22,9 @@ import java.util.Random;
  * Time: 14:27
  * Supervisor controller. Controls the evolution of e-puck. Supervisor can reset position of the epuck.
  * Communication with e-puck is done via emitters/receivers. Separate devices for game and neural communication.
- * Evolution is done by elitism, crossover and mutation.
+ * Evolution is done by elitism, crossover and mutation in EvolutionEngine; the supervisor only runs the trials
+ * in Webots and reports their fitness scores to the engine. In steady state every fitness that comes back is
+ * reported to the engine at once and the next offspring is sent without waiting for the end of a generation.
  * Fitness function of agents is how well they learn the games.
  */
 
@@ -35,45 +46,70 @@ public class SupervisorController extends Supervisor {
     private int WHITE = 0xFFFFFF;
     private int BLACK = 0x000000;
     private double[] translation;
-    private ImageRef toStore;
+    private int DISPLAY = 0;                                // If 1, trajectory is also drawn live on the ground display
+    // Trajectory of every trial is written by a background thread: IMAGES, SPRITES or VECTORS (see TrajectoryRecorder)
+    private int TRAJECTORIES = TrajectoryRecorder.IMAGES;
+    private TrajectoryRecorder trajectories;
 
     private final int TIME_STEP = 128;                      // [ms]
 
     // Evolution
     private int NN_POP_SIZE;
     private int GAME_POP_SIZE;
-    private int SUBSET_SIZE;
     private int NB_INPUTS;
     private int NB_OUTPUTS;
     private int NB_GENES;
     private int NB_HIDDEN_NEURONS;
-    private NeuralNetwork[] populationOfNN;
-    private double[] fitnessNN;
-    private double[][] fitnessPerGame;
-    private double[][] sortedfitnessNN;                     // Population sorted by fitness
-    private double ELITISM_RATIO = 0.1;
-    private double REPRODUCTION_RATIO = 0.4;                // If not using roulette wheel (truncation selection), we need reproduction ratio
-    private double CROSSOVER_PROBABILITY = 0.5;             // Probability of having a crossover
-    private double MUTATION_PROBABILITY = 0.1;              // Probability of mutating each weight-value in a genome
-    private int GENE_MIN = -1;                              // Range of genes: minimum value
-    private int GENE_MAX = 1;                               // Range of genes: maximum value
-    private double MUTATION_SIGMA = 0.2;                    // Mutations follow a Box-Muller distribution from the gene with this sigma
+    private EvolutionEngine engine;
+    private long SEED = System.nanoTime();                  // Master seed; set a fixed value to repeat an evolution
+    private int ALGORITHM = EvolutionEngine.VEGA;           // Breeding: VEGA, NSGA2 (Pareto fronts), ELITISM or STEADY_STATE
+    private Population pending;                             // Offspring on trial in steady state
+    // Island model: if ISLANDS is more than 1, supervisors of several Webots instances, each given its own ISLAND,
+    // exchange their best individuals through MIGRATION_DIR (see Migration)
+    private int ISLAND = 0;
+    private int ISLANDS = 1;
+    private String MIGRATION_DIR = "../migration";
+    private int TOPOLOGY = Migration.RING;                  // RING or FULLY_CONNECTED
+    private int MIGRATION_SIZE = 3;                         // Individuals sent at every migration
+    private int MIGRATION_INTERVAL = 5;                     // Generations between migrations
     private int evaluatedNN = 0;                            // Evaluated individuals
     private int generation = 0;                             // Generation counter
     //If 1, evolution takes place. If 0, then the best individual obtained during the previous evolution is tested for an undetermined amount of time.
     private int EVOLVING = 1;
     private int TESTING = 0;
-    private int ROULETTE_WHEEL = 1;
-
-    //Log variables
-    private double minFitNN = 0.0, avgFitNN = 0.0, bestFitNN = 0.0, absBestFitNN = -10000;
-    private double[][] stats;
-    private int bestNN = -1, absBestNN = -1;
-    private BufferedWriter out1, out2, out3, out4;
-    private FileWriter file1, file2, file3, file4;
-    private BufferedReader reader1, reader3;
-
-    private Random random = new Random();
+    // If 1, the robot abandons trials that cannot reach the elite cutoffs sent after every generation
+    private int RACING = 1;
+    // Fitness of genomes evaluated before; identical genomes are not sent to the robot again
+    private FitnessCache cache;
+    private int CACHE_CAPACITY = 1000;
+    private int CACHE_SAMPLES = 1;                          // Trials per genome before it is served from cache
+    private long CACHE_CONTEXT = "e-puck_line.wbt".hashCode();  // Change when world or game constants change
+    // If 1, genomes of a whole generation are uploaded in one packet and their fitness comes back in one packet.
+    // Not used in steady state, where every offspring is bred from the fitness of the ones before it.
+    private int BATCH = 1;
+    // If 1, genomes are sent as patches against their parent when the robot still holds it (see GenomeCache)
+    private int DELTA = 1;
+    private int GENOME_CACHE_CAPACITY = 64;                 // Must be the same in EpuckController
+    private GenomeCache genomeCache;                        // Mirror of the genomes the robot holds
+    private float[] records;                                // Genome records of the message being encoded
+    private int[] batchIndividuals;                         // Individuals of current batch, in order of their trials
+    private int batchSize;
+    private int batchDone;                                  // Trial of current batch the robot finished last
+    private boolean[] batchEstimated;                       // Trials of current batch abandoned by racing
+    private Protocol protocol = new Protocol();             // Frames exchanged with the robot
+
+    private String ARCHIVE = "out/genomes";                 // Genome archive TESTING modes read from
+
+    // Metrics are dumped into out/metrics.txt after every generation, and served on
+    // http://localhost:METRICS_PORT/metrics unless the port is 0. Events are recorded when Flight Recorder runs.
+    private int METRICS_PORT = 0;
+    private Metrics.Histogram queueLength = Metrics.histogram("receiver.queue");
+    private Metrics.Histogram trialSteps = Metrics.histogram("trial.steps");
+    private Metrics.Counter genomesSent = Metrics.counter("genomes.sent");
+    private Metrics.Counter bytesSent = Metrics.counter("genomes.bytes");
+    private Metrics.Counter fitnessReceived = Metrics.counter("fitness.received");
+    private Events.Trial trialEvent = new Events.Trial();
+    private int steps;                                      // Control steps of current trial
 
     public SupervisorController() {
         super();
@@ -85,103 +121,84 @@ public class SupervisorController extends Supervisor {
     public void run() {
 
         while (step(TIME_STEP) != -1) {
-            byte[] nnFit;
-            float finished = -1;
-
             drawRobotsPosition();
+            steps++;
 
             // As long as individual is being evaluated, print current fitness and return
             int n = receiver.getQueueLength();
+            queueLength.record(n);
             if (n > 0) {
-                nnFit = receiver.getData();
-                // Convert bytes into floats
-                if (nnFit.length == (GAME_POP_SIZE * 4 + 4)) {
-                    if (GAME_POP_SIZE == 1) {
-                        float[] f = Util.bytes2FloatArray(nnFit);
-                        fitnessPerGame[0][evaluatedNN] = f[0];
-                        finished = f[1];
-
-                    } else if (GAME_POP_SIZE == 2) {
-                        float[] f = Util.bytes2FloatArray(nnFit);
-                        fitnessPerGame[0][evaluatedNN] = f[0];
-                        fitnessPerGame[1][evaluatedNN] = f[1];
-                        finished = f[2];
-
-                    } else if (GAME_POP_SIZE == 3) {
-                        float[] f = Util.bytes2FloatArray(nnFit);
-                        fitnessPerGame[0][evaluatedNN] = f[0];
-                        fitnessPerGame[1][evaluatedNN] = f[1];
-                        fitnessPerGame[2][evaluatedNN] = f[2];
-                        finished = f[3];
+                if (protocol.decode(receiver.getData()) && EVOLVING == 1) {
+                    if (protocol.getGeneration() != generation) {
+                        System.err.println("Dropped frame of generation " + protocol.getGeneration() + " in generation "
+                                + generation);
+                    } else if (protocol.getType() == Protocol.TRIAL_DONE) {
+                        // Robot finished a trial of the batch and goes on with the next genome without waiting
+                        batchDone = protocol.getIndividual();
+                        batchEstimated[batchDone] = protocol.hasFlag(Protocol.ESTIMATED);
+                        endTrial(batchIndividuals[batchDone]);
+                        startTrial();
+                        storeImage(batchIndividuals[batchDone]);
+                        resetDisplay();
+                        System.out.println("Evaluated individual " + batchIndividuals[batchDone]);
+                        resetRobotPosition();
+                    } else if (protocol.getType() == Protocol.BATCH_FITNESS
+                            && protocol.getLength() == batchSize * GAME_POP_SIZE) {
+                        // Fitness of every individual of the batch, in order of their trials
+                        fitnessReceived(batchSize, n);
+                        FloatBuffer f = protocol.getPayload();
+                        for (int j = 0; j < batchSize; j++) {
+                            for (int k = 0; k < GAME_POP_SIZE; k++) {
+                                engine.getPopulation().setObjective(k, batchIndividuals[j], f.get());
+                            }
+                            // Racing estimates only hold against this generation's cutoffs
+                            if (!batchEstimated[j]) cache.record(engine.getPopulation(), batchIndividuals[j]);
+                        }
+                        endGeneration();
+                        startNextBatch();
+                    } else if (protocol.getType() == Protocol.UNKNOWN_PARENT) {
+                        // Caches went out of step: both sides start again from full genomes
+                        System.err.println("Robot does not hold parent of individual " + protocol.getIndividual()
+                                + ", resending full genomes");
+                        genomeCache.clear();
+                        resetRobotPosition();
+                        if (pending != null) sendGenomes(genomeMessage(pending, 0, evaluatedNN), 1);
+                        else if (BATCH == 1) sendGenomes(batchMessage(), batchSize);
+                        else sendGenomes(genomeMessage(evaluatedNN), 1);
+                    } else if (protocol.getType() == Protocol.FITNESS && protocol.getLength() == GAME_POP_SIZE
+                            && protocol.getIndividual() == evaluatedNN) {
+                        endTrial(evaluatedNN);
+                        fitnessReceived(1, n);
+                        // In steady state the genome on trial is not in the population yet
+                        Population population = pending != null ? pending : engine.getPopulation();
+                        int individual = pending != null ? 0 : evaluatedNN;
+                        FloatBuffer f = protocol.getPayload();
+                        for (int k = 0; k < GAME_POP_SIZE; k++) {
+                            population.setObjective(k, individual, f.get());
+                        }
+                        storeImage(evaluatedNN);
+                        resetDisplay();
+                        if (!protocol.hasFlag(Protocol.ESTIMATED)) cache.record(population, individual);
+                        System.out.println("Evaluated individual " + evaluatedNN);
+                        // Send next genome to experiment
+                        if (pending != null) {
+                            offspringEvaluated();
+                            startNextOffspring();
+                        } else {
+                            evaluatedNN++;
+                            startNextTrial();
+                        }
+                    } else {
+                        System.err.println("Unexpected frame of type " + protocol.getType());
                     }
-                    receiver.nextPacket();
-
-                } else if (nnFit.length == 1) {
-                    finished = nnFit[0];
-                    receiver.nextPacket();
                 }
+                receiver.nextPacket();
             }
 
-            // When evaluation is done, an extra flag is returned in the message
-            if (finished == 1.0f) {
-
-                if (EVOLVING == 1) {
-                    storeImage(evaluatedNN);
-                    resetDisplay();
-
-                    // VEGA based optimisation
-                    try {
-                        createNewVEGApopulation();
-                    } catch (IOException e) {
-                        System.err.println(""+e.getMessage());
-                    }
-
-                   /*try {
-                        createNewPopulation();
-                    } catch (IOException e) {
-                        System.err.println(""+e.getMessage());
-                    } */
-
-                    generation++;
-                    System.out.println("\nGENERATION \n" + generation);
-                    evaluatedNN = 0;
-                    avgFitNN = 0.0;
-                    bestFitNN = 0;
-                    bestNN = 0;
-                    minFitNN = 0;
-
-                    resetRobotPosition();
-                    // Evolve games every 4 NN generations (gives them time to learn)
-                    if (generation % 1 == 0) {
-                        // Send flag to start evolution of games
-                        byte[] flag = {1};
-                        gameEmitter.send(flag);
-                    }
-                    // Send new weights
-                    byte[] msgInBytes = Util.float2ByteArray(populationOfNN[evaluatedNN].getWeights());
-
-                    emitter.send(msgInBytes);
-                }
-            } else if (finished == 0.0) {
-                if ((evaluatedNN + 1) < NN_POP_SIZE) {
-                    storeImage(evaluatedNN);
-                    resetDisplay();
-                    evaluatedNN++;
-                    System.out.println("Evaluated individual " + evaluatedNN);
-                    // Send next genome to experiment
-                    resetRobotPosition();
-                    byte[] msgInBytes = Util.float2ByteArray(populationOfNN[evaluatedNN].getWeights());
-                    emitter.send(msgInBytes);
-                }
-            }
             if (TESTING == 2) { // Send weights of best individual
-                float[] msg = new float[populationOfNN[0].getWeightsNo() + 1];
-                for (int i = 0; i < populationOfNN[0].getWeightsNo(); i++) {
-                    msg[i] = populationOfNN[0].getWeights()[i];
-                }
-                msg[populationOfNN[0].getWeightsNo()] = 2.0f; // send flag
-                byte[] msgInBytes = Util.float2ByteArray(msg);
-                emitter.send(msgInBytes);
+                Population population = engine.getPopulation();
+                emitter.send(protocol.encode(Protocol.TEST_GENOME, generation, 0, population.getGenes(),
+                        population.offset(0), NB_GENES));
                 System.out.println("Sent best genome for testing.");
                 TESTING = -1;
             }
@@ -189,524 +206,290 @@ public class SupervisorController extends Supervisor {
     }
 
     /**
-     * Store screenshot of display node into an image file, append current individual's index to file's name
-     * @param indivIndex    Index of individual that just finished its trial
+     * Sends the next individual that is not in the fitness cache to the robot. Cached individuals get their fitness
+     * from the cache. Once the whole generation has been assessed, the next one is bred.
      */
-    private void storeImage(int indivIndex) {
-        toStore = groundDisplay.imageCopy(0, 0, width, height);
-        groundDisplay.imageSave(toStore, "screenshots/screenshot" + indivIndex + ".png");
-        groundDisplay.imageDelete(toStore);
+    private void startNextTrial() {
+        while (true) {
+            Population population = engine.getPopulation();
+            while (evaluatedNN < NN_POP_SIZE && cache.lookup(population, evaluatedNN)) evaluatedNN++;
+            if (evaluatedNN < NN_POP_SIZE) break;
+            endGeneration();
+        }
+        resetRobotPosition();
+        sendGenomes(genomeMessage(evaluatedNN), 1);
     }
 
     /**
-     * Draw current robot's position on the display
+     * Steady state: breeds the next offspring and sends it to the robot. Offspring found in the fitness cache are
+     * reported to the engine straight away.
      */
-    private void drawRobotsPosition() {
-        translation = fldTranslation.getSFVec3f();
-        groundDisplay.setOpacity(0.03);
-        groundDisplay.setColor(BLACK);
-        groundDisplay.fillOval(
-                (int) (height * (translation[2] + GROUND_Z / 2) / GROUND_Z),
-                (int) (width * (translation[0] + GROUND_X / 2) / GROUND_X),
-                2,
-                2);
+    private void startNextOffspring() {
+        while (true) {
+            engine.nextOffspring(pending, 0);
+            if (!cache.lookup(pending, 0)) break;
+            offspringEvaluated();
+        }
+        resetRobotPosition();
+        sendGenomes(genomeMessage(pending, 0, evaluatedNN), 1);
     }
 
     /**
-     * Reset display node by repainting the background
+     * Steady state: reports fitness of the offspring just assessed to the engine. Every NN_POP_SIZE offspring the
+     * engine counts a generation, which the robot is told about as at the end of a generational one.
      */
-    private void resetDisplay() {
-        groundDisplay.setOpacity(1.0);
-        groundDisplay.setColor(WHITE);
-        groundDisplay.fillRectangle(0, 0, width, height);
-        translation = fldTranslation.getSFVec3f();
+    private void offspringEvaluated() {
+        engine.offspringEvaluated(pending, 0);
+        evaluatedNN++;
+        if (engine.getGeneration() != generation) {
+            trajectories.endGeneration(generation);
+            generationEnded();
+        }
     }
 
     /**
-     * Method to normalise fitness scores. Works for input coming from one fitness function.
-     * @param fitnessScores Array containing fitness scores
+     * Uploads genomes of all individuals of current generation that are not in the fitness cache to the robot in
+     * one frame, one genome after another
      */
-    private void normaliseFitnessScore(double[] fitnessScores) {
-
-       double min = -3800, max = 1880; // sum on all games
-
-        for (int i = 0; i < fitnessScores.length; i++) {
-            double temp = 0;
-            try {
-                temp = Util.normalize(min, max, fitnessScores[i]);
-            } catch (Exception e) {
-                System.err.println("Error while normalizing: " + e.getMessage());
+    private void startNextBatch() {
+        int i;
+        while (true) {
+            Population population = engine.getPopulation();
+            batchSize = 0;
+            for (i = 0; i < NN_POP_SIZE; i++) {
+                if (!cache.lookup(population, i)) batchIndividuals[batchSize++] = i;
             }
-            fitnessScores[i] = temp;
+            if (batchSize > 0) break;
+            endGeneration();
         }
+        batchDone = 0;
+        for (i = 0; i < batchSize; i++) batchEstimated[i] = false;
+        resetRobotPosition();
+        sendGenomes(batchMessage(), batchSize);
     }
 
     /**
-     * Method to normalise fitness scores. Scores are normalised according to given game.
-     * @param fitnessScores     Array of fitness scores
-     * @param gameNo            Number of the game that the fitness comes from
+     * Sends a frame of genomes to the robot, whose first trial starts now
+     * @param frame     Genome or batch frame
+     * @param genomes   Number of genomes in frame
      */
-    private void normaliseFitnessScore(double[] fitnessScores, int gameNo) {
-
-        double min = 0, max = 0;
+    private void sendGenomes(byte[] frame, int genomes) {
+        emitter.send(frame);
+        Events.GenomeDispatched event = new Events.GenomeDispatched();
+        event.generation = generation;
+        event.genomes = genomes;
+        event.bytes = frame.length;
+        event.commit();
+        genomesSent.add(genomes);
+        bytesSent.add(frame.length);
+        startTrial();
+    }
 
-        if (gameNo == 0) { // Avoiding obstacles
-            min = -1410;
-            max = 940;
-        }
-        if (gameNo == 1) { // Following wall
-            min = -1890;
-            max = 470;
-        }
-        if (gameNo == 2) { // Following line
-            min = -940;
-            max = 470;
-        }
+    /**
+     * Records that fitness of some trials came back
+     * @param individuals   Number of individuals in frame
+     * @param queued        Packets that were waiting in the receiver
+     */
+    private void fitnessReceived(int individuals, int queued) {
+        Events.FitnessReceived event = new Events.FitnessReceived();
+        event.generation = generation;
+        event.individuals = individuals;
+        event.queueLength = queued;
+        event.commit();
+        fitnessReceived.add(individuals);
+    }
 
-        for (int i = 0; i < fitnessScores.length; i++) {
-            double temp = 0;
-            try {
-                temp = Util.normalize(min, max, fitnessScores[i]);
-            } catch (Exception e) {
-                System.err.println("Error while normalizing: " + e.getMessage());
-            }
-            fitnessScores[i] = temp;
-        }
+    private void startTrial() {
+        trialEvent = new Events.Trial();
+        trialEvent.begin();
+        steps = 0;
     }
 
     /**
-     * The reset function is called at the beginning of an evolution.
+     * Records trial of an individual that just ended
+     * @param individual    Index of individual
      */
-    public void reset() {
+    private void endTrial(int individual) {
+        trialEvent.generation = generation;
+        trialEvent.individual = individual;
+        trialEvent.steps = steps;
+        trialEvent.commit();
+        trialSteps.record(steps);
+    }
 
+    /**
+     * Converts genomes of current batch into a message for the e-puck
+     * @return  Batch frame
+     */
+    private byte[] batchMessage() {
         int i;
-        for (i = 0; i < NN_POP_SIZE; i++) fitnessNN[i] = -1;
-
-        if (EVOLVING == 1) {
-            // Initialise weights randomly
-            initializePopulation();
-            System.out.println("NEW EVOLUTION\n");
-            System.out.println("GENERATION 0\n");
-            resetRobotPosition();
-
-            // Then, send weights of NNs to experiment
-            byte[] msgInBytes = Util.float2ByteArray(populationOfNN[evaluatedNN].getWeights());
-            emitter.send(msgInBytes);
-        }
-        int counter = 0;
-        String strLine;
-        if (TESTING == 1) { // Test last recorded generation
-            try {
-                while ((strLine = reader3.readLine()) != null && counter < 50) {
-                    String[] weightsStr = strLine.split(",");
-                    for (i = 0; i < populationOfNN[counter].getWeightsNo(); i++) {
-                        populationOfNN[counter].setWeights(i, Float.parseFloat(weightsStr[i]));
-                    }
-                    counter++;
-                }
-            } catch (IOException e) {
-                e.getMessage();
+        Population population = engine.getPopulation();
+        if (DELTA == 1) {
+            int length = 0;
+            for (i = 0; i < batchSize; i++) {
+                int individual = batchIndividuals[i];
+                length = genomeCache.encode(population.getId(individual), population.getParent(individual),
+                        population.getGenes(), population.offset(individual), records, length);
             }
-
-            System.out.println("TESTING LAST GENERATION \n");
+            return protocol.encode(Protocol.BATCH_RECORDS, generation, batchSize, records, 0, length);
         }
-
-        if (TESTING == 2) { // Test best individual - whole population will be filled with the same individual's weights
-            try {
-                while ((strLine = reader1.readLine()) != null) {
-                    String[] weightsStr = strLine.split(",");
-                    for (i = 0; i < NN_POP_SIZE; i++) {
-                        for (int j = 0; j < populationOfNN[i].getWeightsNo(); j++) {
-                            populationOfNN[i].setWeights(j, Float.parseFloat(weightsStr[j]));
-                        }
-                    }
-                }
-            } catch (IOException e) {
-                System.err.println(e.getMessage());
-            }
+        FloatBuffer payload = protocol.start(Protocol.GENOME_BATCH, generation, batchSize, batchSize * NB_GENES);
+        for (i = 0; i < batchSize; i++) {
+            payload.put(population.getGenes(), population.offset(batchIndividuals[i]), NB_GENES);
         }
+        return protocol.frame(Protocol.GENOME_BATCH);
     }
 
     /**
-     * Initiate genes of all individuals randomly
+     * Breeds the next generation and tells the robot that the generation is over, so that it evolves games on the
+     * trials it has run
      */
-    private void initializePopulation() {
-        int i, j;
-        for (i = 0; i < NN_POP_SIZE; i++) {
-            for (j = 0; j < NB_GENES; j++) {
-                // all genes must be in the range of [-1, 1]
-                populationOfNN[i].setWeights(j, (float) ((GENE_MAX - GENE_MIN) * random.nextFloat() - (GENE_MAX - GENE_MIN) / 2.0));
-            }
-        }
+    private void endGeneration() {
+        trajectories.endGeneration(generation);
+        // VEGA based optimisation
+        engine.nextGeneration();
+        generationEnded();
     }
 
     /**
-     * Fitness proportional selection that creates a mating pool. Based on roulette selection.
-     * @param subpopulation Subpopulation that will be assessed according to specific game
-     * @return              Returns pool of indexes of individuals
+     * Prints the summary of the generation the engine has just finished and tells the robot about it
      */
-    private double[] rouletteSelect(NeuralNetwork[] subpopulation) {
-
-        // 1. Sort
-        double[] fitness = new double[subpopulation.length];
-        for (int i = 0; i < fitness.length; i++) fitness[i] = subpopulation[i].getFitness();
-        double[][] sortedFitness = new double[subpopulation.length][2];
-        sortPopulation(sortedFitness, fitness);
-
-        double total_fitness = 0;
-        // 2. Find minimum fitness to subtract it from sum
-        double min_fitness = sortedFitness[subpopulation.length - 1][0];
-        if (min_fitness < 0) min_fitness = 0;
-        int i, j;
-        // 3. Calculate total of fitness, used for roulette wheel selection
-        for (i = 0; i < subpopulation.length; i++) total_fitness += fitnessNN[i];
-        total_fitness -= min_fitness * subpopulation.length;
-        // 4. Create mating pool
-        double[] pool = new double[subpopulation.length];
-        for (i = 0; i < subpopulation.length; i++) {
-            int ind = 0;
-            float r = random.nextFloat();
-            double fitness_counter = (sortedFitness[ind][0] - min_fitness) / total_fitness;
-            while (r > fitness_counter && ind < subpopulation.length - 1) {
-                ind++;
-                fitness_counter += (sortedFitness[ind][0] - min_fitness) / total_fitness;
-                if (ind == subpopulation.length - 1) break;
-            }
-            pool[i] = ind;
-        }
-        return pool;
+    private void generationEnded() {
+        generation = engine.getGeneration();
+        System.out.println("Fitness cache: " + cache.getHits() + " hits, " + cache.getMisses() + " misses");
+        if (DELTA == 1) {
+            System.out.println("Genomes sent: " + genomeCache.getPatches() + " patches, "
+                    + genomeCache.getFullGenomes() + " full");
+        }
+        System.out.println("\nGENERATION \n" + generation);
+        evaluatedNN = 0;
+
+        // Evolve games every 4 NN generations (gives them time to learn)
+        if (generation % 1 == 0) {
+            // Send flag to start evolution of games
+            gameEmitter.send(protocol.encode(Protocol.END_GENERATION, generation, 0));
+        }
+        if (RACING == 1) gameEmitter.send(cutoffsMessage());
     }
 
     /**
-     * Algorithm to perform VEGA Multi-Objective Optimisation
+     * Converts elite cutoffs of the last generation into a message for the e-puck, one float per game
+     * @return  Cutoffs frame
      */
-    private void createNewVEGApopulation() throws IOException {
-        int i, j, k, counter = 0;
-
-        // 1. Shuffle population
-        Util.shuffleList(populationOfNN);
-
-        // Set fitness - sum of fitness scores for all games - to be used for comparison with regular assessment
-        for(i=0; i<fitnessPerGame.length; i++){
-            for (j=0; j<fitnessPerGame[i].length; j++) {
-                fitnessNN[j]+=fitnessPerGame[i][j];
-            }
-        }
-        // Write sum of fitness scores to file - for comparison
-        normaliseFitnessScore(fitnessNN); // Normalise
-        double[][] sortedSummedFitness = new double[NN_POP_SIZE][2];
-        for (k = 0; k < fitnessNN.length; k++) { // loop through actors
-            sortedSummedFitness[k][0] = fitnessNN[k];    // keep fitness score
-            sortedSummedFitness[k][1] = k;               // keep index
-        }
-        quickSort(sortedSummedFitness, 0, sortedSummedFitness.length - 1); // sort for current game
-        // Find and log current and absolute best individual
-        double best = sortedSummedFitness[0][0];
-        double min = sortedSummedFitness[NN_POP_SIZE - 1][0];
-        double avg = Util.mean(fitnessNN);
-        FilesFunctions.logAllActorFitnesses(out2, generation, fitnessNN);
-        FilesFunctions.logFitnessScores(out4, generation, min, avg, best);
-
-        // 2. divide population into O subpopulations of size N/O
-        NeuralNetwork[][] subpopulations = new NeuralNetwork[GAME_POP_SIZE][SUBSET_SIZE];
-        for (i = 0; i < subpopulations.length; i++) {
-
-            // Create subpopulation
-            NeuralNetwork[] subpop = new NeuralNetwork[SUBSET_SIZE];
-            for (k = 0; k < subpop.length; k++) {
-                subpop[k] = new NeuralNetwork(NB_INPUTS, NB_OUTPUTS, NB_HIDDEN_NEURONS);
-            }
-
-            normaliseFitnessScore(fitnessPerGame[i], i); // Normalise fitness scores
-            double[][] sortedFitness = new double[NN_POP_SIZE][2];
-            for (j = 0; j < fitnessPerGame[i].length; j++) { // loop through actors
-                sortedFitness[j][0] = fitnessPerGame[i][j];    // keep fitness score
-                sortedFitness[j][1] = j;                        // keep index
-            }
-            quickSort(sortedFitness, 0, sortedFitness.length - 1); // sort for current game
-            // Find and log current and absolute best individual
-            bestFitNN = sortedFitness[0][0];
-            minFitNN = sortedFitness[NN_POP_SIZE - 1][0];
-            bestNN = (int) sortedFitness[0][1];
-            avgFitNN = Util.mean(fitnessPerGame[i]);
-            if (bestFitNN > stats[i][1]) {
-                stats[i][3] = bestNN;
-            }
-            // Log best individual
-            try {
-                FilesFunctions.logBestIndiv(populationOfNN, (int) stats[i][3]);
-            } catch (IOException e) {
-                System.err.println(e.getMessage());
-            }
-            System.out.println("Game: " + i + " stats");
-            System.out.println("Best fitness score: " + bestFitNN);
-            System.out.println("Average fitness score: " + avgFitNN);
-            System.out.println("Worst fitness score: " + minFitNN);
-            System.out.println("Best index: " + bestNN);
-            // Update stats
-            stats[i][0] = avgFitNN;
-            stats[i][1] = bestFitNN;
-            stats[i][2] = minFitNN;
-
-            for (int l = 0; l < subpop.length; l++) {
-                for (int m = 0; m < subpop[l].getWeightsNo(); m++) {
-                    subpop[l].setWeights(m, populationOfNN[counter].getWeights()[m]);
-                }
-                // 3. Assign fitness to each member in each subpopulation using one objective per subpopulation
-                subpop[l].setFitness(fitnessPerGame[i][counter]);
-                counter++;
-            }
-
-            // 4. Use fitness proportionate selection to create a 'mating pool' for each subpopulation
-            double[] probTable = rouletteSelect(subpop);    // add to mating pool in a fitness proportionate way
-
-            NeuralNetwork[] sub = new NeuralNetwork[NN_POP_SIZE / GAME_POP_SIZE];
-            for (k = 0; k < sub.length; k++) {
-                sub[k] = new NeuralNetwork(NB_INPUTS, NB_OUTPUTS, NB_HIDDEN_NEURONS);
-            }
-            for (k = 0; k < sub.length; k++) {
-                // randomly select individual from a mating pool
-                int r = random.nextInt(probTable.length);
-                for (j = 0; j < NB_GENES; j++) {
-                    sub[k].setWeights(j, subpop[r].getWeights()[j]);
-                }
-            }
-            // 5. Replace the subpopulation with a mating pool
-            for (k = 0; k < subpopulations[i].length; k++) {
-                subpopulations[i][k] = new NeuralNetwork(NB_INPUTS, NB_OUTPUTS, NB_HIDDEN_NEURONS);
-                for (int l = 0; l < subpopulations[i][k].getWeightsNo(); l++) {
-                    subpopulations[i][k].copy(sub[i]);
-                }
-            }
-        }
-
-        // Log stats to the files
-        FilesFunctions.logPopulation(out1, generation, stats);
-
-        // 5. Merge 'mating pools' (i.e. the modified subpopulations)
-        NeuralNetwork[] tempPopulation = Util.concat(subpopulations);
-
-        // 6. Create new population
-        NeuralNetwork[] newpop = new NeuralNetwork[NN_POP_SIZE];
-        for (i = 0; i < newpop.length; i++) {
-            newpop[i] = new NeuralNetwork(NB_INPUTS, NB_OUTPUTS, NB_HIDDEN_NEURONS);
-        }
-
-        // 7. Perform crossover
-        for (i = 0; i < NN_POP_SIZE; i++) {
-            // Copy from temp pop
-            int ind1 = random.nextInt(NN_POP_SIZE);
-            // If we will do crossover, select a second individual
-            if (random.nextFloat() < CROSSOVER_PROBABILITY) {
-               int ind2;
-                do {
-                    ind2 = random.nextInt(NN_POP_SIZE);
-                } while (ind1 == ind2);
-                newpop[i].crossover(ind1, ind2, newpop[i], NB_GENES, tempPopulation);
-            } else { //if no crossover was done, just copy selected individual directly
-                for (j = 0; j < NB_GENES; j++)
-                    newpop[i].setWeights(j, tempPopulation[ind1].getWeights()[j]);
-            }
-        }
-        // 8. Mutate new population and copy back to pop
-        for (i = 0; i < NN_POP_SIZE; i++) {
-            for (j = 0; j < NB_GENES; j++)
-                if (random.nextFloat() < MUTATION_PROBABILITY)
-                    populationOfNN[i].setWeights(j, populationOfNN[i].mutate(GENE_MIN, GENE_MAX, newpop[i].getWeights()[j], MUTATION_SIGMA));
-                else
-                    populationOfNN[i].copy(newpop[i]);
-        }
-
-        // 9. Reset fitness
-        for (i = 0; i < fitnessPerGame.length; i++) {
-            for (j = 0; j < fitnessPerGame[i].length; j++) fitnessPerGame[i][i] = 0;
-        }
-
+    private byte[] cutoffsMessage() {
+        double[] cutoffs = engine.getEliteCutoffs();
+        FloatBuffer payload = protocol.start(Protocol.ELITE_CUTOFFS, generation, 0, GAME_POP_SIZE);
+        for (int i = 0; i < GAME_POP_SIZE; i++) payload.put((float) cutoffs[i]);
+        return protocol.frame(Protocol.ELITE_CUTOFFS);
     }
 
     /**
-     * Method to create a new population. It sorts current population and stores sorted information in sortedFitnessNN
-     * array. New population is created using elitism, crossover and mutation.
-     * This method also logs population's statistics into a file.
+     * Converts genome of an individual into a message for the e-puck
+     * @param individual    Index of individual in current population
+     * @return              Genome frame
      */
-    private void createNewPopulation() throws IOException {
-        NeuralNetwork[] newpop = new NeuralNetwork[NN_POP_SIZE];
-        for (int i = 0; i < newpop.length; i++) {
-            newpop[i] = new NeuralNetwork(NB_INPUTS, NB_OUTPUTS, NB_HIDDEN_NEURONS);
-        }
-        int elitism_counter = (int) (NN_POP_SIZE*ELITISM_RATIO);
-        float total_fitness = 0;
+    private byte[] genomeMessage(int individual) {
+        return genomeMessage(engine.getPopulation(), individual, individual);
+    }
 
-        // Set fitness - sum of fitness scores for all games
-        for(int i=0; i<fitnessPerGame.length; i++){
-            for (int j=0; j<fitnessPerGame[i].length; j++) {
-                fitnessNN[j]+=fitnessPerGame[i][j];
-            }
-        }
-        // Sort population
-        normaliseFitnessScore(fitnessNN); // Normalise fitness scores
-        sortPopulation(sortedfitnessNN, fitnessNN);
-
-        // Find and log current and absolute best individual
-        bestFitNN = sortedfitnessNN[0][0];
-        minFitNN = sortedfitnessNN[NN_POP_SIZE - 1][0];
-        bestNN = (int) sortedfitnessNN[0][1];
-        avgFitNN = Util.mean(fitnessNN);
-        if (bestFitNN > absBestFitNN) {
-            absBestFitNN = bestFitNN;
-            absBestNN = bestNN;
-            FilesFunctions.logBest(out3, generation, NB_GENES, absBestNN, populationOfNN);
-        }
-        System.out.println("Best fitness score: " + bestFitNN+". Index: "+bestNN);
-        System.out.println("Average fitness score: " + avgFitNN);
-        System.out.println("Worst fitness score: " + minFitNN);
-        System.out.println("Absolute best index: " + absBestNN);
-        // Write data to files
-        FilesFunctions.logAllActorFitnesses(out2, generation, fitnessNN);
-        FilesFunctions.logFitnessScores(out4, generation, minFitNN, avgFitNN, bestFitNN);
-        FilesFunctions.logLastGeneration(populationOfNN);   // Log the generation data  - stores weights
-        FilesFunctions.logBestIndiv(populationOfNN, bestNN);// Log weights of best individual
-        // Find minimum fitness to subtract it from sum
-        double min_fitness = sortedfitnessNN[NN_POP_SIZE-1][0];
-        if (min_fitness<0) min_fitness=0;
-        int i, j;
-        // Calculate total of fitness, used for roulette wheel selection
-        for(i=0; i<NN_POP_SIZE; i++) total_fitness+=fitnessNN[i];
-        total_fitness-=min_fitness*NN_POP_SIZE;
-
-        // Create new population
-        for(i=0; i<NN_POP_SIZE; i++) {
-
-            //the elitism_counter best individuals are simply copied to the new population
-            if (i < elitism_counter) {
-                for (j = 0; j < NB_GENES; j++)
-                    newpop[i].setWeights(j, populationOfNN[(int) sortedfitnessNN[i][1]].getWeights()[j]);
-            }
-            //the other individuals are generated through the crossover of two parents
-            else {
-
-                //select non-elitist individual
-                int ind1=0;
-                if (ROULETTE_WHEEL==1) {
-                    double r = random.nextDouble() * (total_fitness - 0) + 0;
-                    for(int m=0; m<NN_POP_SIZE; m++){
-                        r = r - fitnessNN[m];
-                        if(r <=0){
-                            ind1 = m;
-                            break;
-                        }
-                    }
-                }
-                else ind1= (int) (elitism_counter+random.nextFloat()*(NN_POP_SIZE*REPRODUCTION_RATIO-elitism_counter));
-
-                //if we will do crossover, select a second individual
-                if (random.nextFloat() < CROSSOVER_PROBABILITY) {
-                    int ind2=0;
-                    if (ROULETTE_WHEEL==1)
-                        if (random.nextFloat() < CROSSOVER_PROBABILITY) {
-                            double r = random.nextDouble() * (total_fitness - 0) + 0;
-                            for(int m=0; m<NN_POP_SIZE; m++){
-                                r = r - fitnessNN[m];
-                                if(r <=0){
-                                    ind2 = m;
-                                    break;
-                                }
-                            }
-                            newpop[i].crossover(ind1, ind2, newpop[i], NB_GENES, populationOfNN);
-                        } else { //if no crossover was done, just copy selected individual directly
-                            for (j = 0; j < NB_GENES; j++)
-                                newpop[i].setWeights(j, populationOfNN[(int) sortedfitnessNN[ind1][1]].getWeights()[j]);
-                        }
-                    else
-                        do {
-                            ind2=(int)(elitism_counter+random.nextFloat()*(NN_POP_SIZE*REPRODUCTION_RATIO-elitism_counter));
-                        } while (ind1==ind2);
-                    ind1=(int)sortedfitnessNN[ind1][1];
-                    ind2=(int)sortedfitnessNN[ind2][1];
-                    newpop[i].crossover(ind1, ind2, newpop[i], NB_GENES, populationOfNN);
-                }
-                else { //if no crossover was done, just copy selected individual directly
-                    for(j=0;j<NB_GENES;j++) newpop[i].setWeights(j, populationOfNN[(int) sortedfitnessNN[ind1][1]].getWeights()[j]);
-                }
-            }
-        }
+    /**
+     * Converts genome of an individual into a message for the e-puck
+     * @param population    Population the individual belongs to
+     * @param individual    Index of individual in population
+     * @param trial         Index of trial in current generation, which the robot sends back with its fitness
+     * @return              Genome frame
+     */
+    private byte[] genomeMessage(Population population, int individual, int trial) {
+        if (DELTA == 1) {
+            int length = genomeCache.encode(population.getId(individual), population.getParent(individual),
+                    population.getGenes(), population.offset(individual), records, 0);
+            return protocol.encode(Protocol.GENOME_RECORD, generation, trial, records, 0, length);
+        }
+        return protocol.encode(Protocol.GENOME, generation, trial, population.getGenes(),
+                population.offset(individual), NB_GENES);
+    }
 
-        // Mutate new population and copy back to pop
-        for(i=0; i<NN_POP_SIZE; i++) {
-            if(i<elitism_counter) { //no mutation for elitists
-                for(j=0;j<NB_GENES;j++)
-                    populationOfNN[i].copy(newpop[i]);
-            }
-            else { // Mutate others with probability per gene
-                for(j=0;j<NB_GENES;j++)
-                    if(random.nextFloat()<MUTATION_PROBABILITY)
-                        populationOfNN[i].setWeights(j, populationOfNN[i].mutate(GENE_MIN, GENE_MAX, newpop[i].getWeights()[j], MUTATION_SIGMA));
-                    else
-                        populationOfNN[i].copy(newpop[i]);
-            }
+    /**
+     * Hands trajectory of the trial that just ended to the recorder, which stores it as image or points in screenshots/
+     * @param indivIndex    Index of individual that just finished its trial
+     */
+    private void storeImage(int indivIndex) {
+        trajectories.endTrial(generation, indivIndex);
+    }
 
-            // Reset fitness
-            fitnessNN[i]=-1;
-        }
-        return;
+    /**
+     * Record current robot's position, and draw it on the display if DISPLAY is 1
+     */
+    private void drawRobotsPosition() {
+        translation = fldTranslation.getSFVec3f();
+        trajectories.add(translation[0], translation[2]);
+        if (DISPLAY == 0) return;
+        groundDisplay.setOpacity(0.03);
+        groundDisplay.setColor(BLACK);
+        groundDisplay.fillOval(
+                (int) (height * (translation[2] + GROUND_Z / 2) / GROUND_Z),
+                (int) (width * (translation[0] + GROUND_X / 2) / GROUND_X),
+                2,
+                2);
     }
 
     /**
-     * Sort whole population according to fitness score of each individual. Uses quickSort.
-     * @param sortedfitness Array that will store sorted fitness and corresponding indexes (we do not sort actual fitness array)
-     * @param fitness       Fitness scores to be sorted
+     * Reset display node by repainting the background
      */
-    private void sortPopulation(double[][] sortedfitness, double[] fitness) {
-        int i;
-        //sort populationOfNN by fitness
-        for (i = 0; i < sortedfitness.length; i++) {
-            sortedfitness[i][0] = fitness[i];
-            sortedfitness[i][1] = (float) i; //keep index
-        }
-        quickSort(sortedfitness, 0, sortedfitness.length - 1);
+    private void resetDisplay() {
+        if (DISPLAY == 0) return;
+        groundDisplay.setOpacity(1.0);
+        groundDisplay.setColor(WHITE);
+        groundDisplay.fillRectangle(0, 0, width, height);
+        translation = fldTranslation.getSFVec3f();
     }
 
     /**
-     * Standard fast algorithm to sort populationOfNN by fitness
-     *
-     * @param fitness Array that stores fitness and index of each individual.
-     * @param left    Min index of the array
-     * @param right   Max index of the array
+     * The reset function is called at the beginning of an evolution.
      */
-    private void quickSort(double fitness[][], int left, int right) {
-        double[] pivot = new double[2];
-        int l_hold, r_hold;
-
-        l_hold = left;
-        r_hold = right;
-        pivot[0] = fitness[left][0];
-        pivot[1] = fitness[left][1];
-        while (left < right) {
-            while ((fitness[right][0] <= pivot[0]) && (left < right))
-                right--;
-            if (left != right) {
-                fitness[left][0] = fitness[right][0];
-                fitness[left][1] = fitness[right][1];
-                left++;
+    public void reset() {
+
+        int i;
+        Population population = engine.getPopulation();
+
+        if (EVOLVING == 1) {
+            // Initialise weights randomly
+            engine.initialise();
+            generation = engine.getGeneration();
+            genomeCache.clear();
+            System.out.println("NEW EVOLUTION\n");
+            System.out.println("GENERATION 0\n");
+            resetRobotPosition();
+
+            // Then, send weights of NNs to experiment
+            if (pending != null) {
+                startNextOffspring();
+            } else if (BATCH == 1) {
+                startNextBatch();
+            } else {
+                byte[] msgInBytes = genomeMessage(evaluatedNN);
+                sendGenomes(msgInBytes, 1);
             }
-            while ((fitness[left][0] >= pivot[0]) && (left < right))
-                left++;
-            if (left != right) {
-                fitness[right][0] = fitness[left][0];
-                fitness[right][1] = fitness[left][1];
-                right--;
+        }
+        if (TESTING == 1 || TESTING == 2) {
+            try {
+                GenomeArchive archive = GenomeArchive.open(ARCHIVE);
+                if (archive.getGenerations() == 0) {
+                    System.err.println("Genome archive " + ARCHIVE + " is empty");
+                } else if (TESTING == 1) { // Test last recorded generation
+                    archive.readGeneration(archive.getGenerations() - 1, population);
+                    System.out.println("TESTING LAST GENERATION \n");
+                } else { // Test best individual - whole population will be filled with the same individual's weights
+                    long best = archive.getAbsBestRecord();
+                    for (i = 0; i < NN_POP_SIZE; i++) archive.readIndividual(best, population, i);
+                }
+                archive.close();
+            } catch (IOException e) {
+                System.err.println("Cannot read genome archive: " + e.getMessage());
             }
         }
-        fitness[left][0] = pivot[0];
-        fitness[left][1] = pivot[1];
-        pivot[0] = left;
-        left = l_hold;
-        right = r_hold;
-        if (left < (int) pivot[0]) quickSort(fitness, left, (int) pivot[0] - 1);
-        if (right > (int) pivot[0]) quickSort(fitness, (int) pivot[0] + 1, right);
     }
 
-
     /**
      * Resets the position of the epuck before each generation's trials
      */
@@ -719,36 +502,32 @@ public class SupervisorController extends Supervisor {
      */
     private void initialise() {
 
-        int i, j;
 
         /* Population/Evolution parameters */
         NN_POP_SIZE = 30;
         GAME_POP_SIZE = 3;
-        SUBSET_SIZE = NN_POP_SIZE / GAME_POP_SIZE;
-        fitnessPerGame = new double[GAME_POP_SIZE][NN_POP_SIZE];
 
         // Neural Networks
         NB_INPUTS = 9;
         NB_OUTPUTS = 2;
         NB_HIDDEN_NEURONS = 8;
-        NB_GENES = NB_INPUTS * NB_HIDDEN_NEURONS + NB_HIDDEN_NEURONS + NB_HIDDEN_NEURONS * NB_OUTPUTS + NB_OUTPUTS;
-
-        populationOfNN = new NeuralNetwork[NN_POP_SIZE];
-        for (i = 0; i < NN_POP_SIZE; i++) populationOfNN[i] = new NeuralNetwork(NB_INPUTS, NB_OUTPUTS, NB_HIDDEN_NEURONS);
-        fitnessNN = new double[NN_POP_SIZE];
-        for (i = 0; i < NN_POP_SIZE; i++) fitnessNN[i] = 0.0;
-        sortedfitnessNN = new double[NN_POP_SIZE][2];
-        for (i = 0; i < sortedfitnessNN.length; i++) {
-            for (j = 0; j < 2; j++) {
-                sortedfitnessNN[i][j] = 0.0;
-            }
-        }
 
-        // Initialise stats
-        stats = new double[GAME_POP_SIZE][4];
-        for (i = 0; i < stats.length; i++) {
-            for (j = 0; j < stats[i].length; j++) stats[i][j] = 0;
-        }
+        if (ISLANDS > 1) SEED = Rng.mix(SEED, ISLAND);    // Islands given the same seed still differ
+        engine = new EvolutionEngine(NN_POP_SIZE, GAME_POP_SIZE, NB_INPUTS, NB_OUTPUTS, NB_HIDDEN_NEURONS, SEED);
+        System.out.println("Seed: " + SEED);
+        engine.setAlgorithm(ALGORITHM);
+        if (ISLANDS > 1) {
+            engine.setMigration(new Migration(MIGRATION_DIR, ISLAND, ISLANDS, TOPOLOGY, MIGRATION_SIZE,
+                    MIGRATION_INTERVAL));
+        }
+        NB_GENES = engine.getGenesNo();
+        cache = new FitnessCache(CACHE_CAPACITY, CACHE_SAMPLES, GAME_POP_SIZE);
+        cache.setContext(CACHE_CONTEXT);
+        genomeCache = new GenomeCache(GENOME_CACHE_CAPACITY, NB_GENES);
+        records = new float[NN_POP_SIZE * genomeCache.maxRecordLength()];
+        batchIndividuals = new int[NN_POP_SIZE];
+        batchEstimated = new boolean[NN_POP_SIZE];
+        if (ALGORITHM == EvolutionEngine.STEADY_STATE) pending = new Population(1, NB_GENES, GAME_POP_SIZE);
 
         // Nodes
         receiver = getReceiver("receiver");
@@ -773,79 +552,12 @@ public class SupervisorController extends Supervisor {
         height = groundDisplay.getHeight();
         // paint the display's background
         resetDisplay();
+        trajectories = new TrajectoryRecorder(TRAJECTORIES, "screenshots", width, height, GROUND_X, GROUND_Z,
+                NN_POP_SIZE);
 
         // Logging
-        try {
-            file1 = new FileWriter("out/results:fitness.txt");
-        } catch (IOException e) {
-            System.out.println("Cannot open fitness.txt file.");
-        }
-        out1 = new BufferedWriter(file1);
-        try {
-            out1.write("Generation");
-            for (i = 0; i < GAME_POP_SIZE; i++) {
-                out1.write(",Average" + i + ",Best" + i + ",Worst" + i + ",Abs" + i);
-            }
-            out1.write("\n");
-            out1.flush();
-
-        } catch (IOException e) {
-            System.out.println("" + e.getMessage());
-        }
-
-        try {
-            file4 = new FileWriter("out/sum_fitness.txt");
-        } catch (IOException e) {
-            System.out.println("Cannot open sum_fitness.txt file.");
-        }
-        out4 = new BufferedWriter(file4);
-        try{
-            out4.write("Generation,Worst,Average,Best");
-            out4.write("\n");
-            out4.flush();
-        }  catch (IOException e){
-            System.err.println("" + e.getMessage());
-        }
-
-        try {
-            file2 = new FileWriter("out/all_actor_fit.txt");
-        } catch (IOException e) {
-            System.err.println("Error while opening file: all_actor_fit.txt " + e.getMessage());
-        }
-        out2 = new BufferedWriter(file2);
-        try {
-            out2.write("generation");
-            for (i = 0; i < NN_POP_SIZE; i++) {
-                out2.write(",Actor" + i + ",");
-            }
-            out2.write("\n");
-
-        } catch (IOException e) {
-            System.out.println("" + e.getMessage());
-        }
-
-        try {
-            file3 = new FileWriter("out/results:bestgenome.txt");
-        } catch (IOException e) {
-            System.out.println("Cannot open bestgenome.txt file.");
-        }
-        out3 = new BufferedWriter(file3);
-
-        /* Reading from file - for testing purposes */
-
-        try {
-            reader3 = new BufferedReader(new FileReader("out/results:genomes.txt"));
-        } catch (FileNotFoundException e) {
-            System.out.println("Cannot read from file: results:genomes.txt");
-            System.out.println(e.getMessage());
-        }
-
-        try {
-            reader1 = new BufferedReader(new FileReader("out/best_actor.txt"));
-        } catch (FileNotFoundException e) {
-            System.out.println("Cannot read from file: best_actor.txt");
-            System.out.println(e.getMessage());
-        }
+        engine.setListener(new EvolutionLogger(NN_POP_SIZE, GAME_POP_SIZE, NB_GENES));
+        if (METRICS_PORT != 0) Metrics.serve(METRICS_PORT);
 
         System.out.println("Supervisor has been initialised.");
     }
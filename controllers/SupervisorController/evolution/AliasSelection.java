@@ -0,0 +1,59 @@
+package evolution;
+
+import java.util.Random;
+
+/**
+ * Fitness proportional selection with Walker's alias method (Vose's construction). Building the table is O(N) and
+ * every draw is O(1): one uniform slot and one biased coin.
+ */
+public class AliasSelection extends Selection {
+
+    private double[] probability = new double[0];   // Chance of keeping the slot rather than taking its alias
+    private int[] alias = new int[0];
+    private int[] small = new int[0];               // Work lists of slots under and over the average
+    private int[] large = new int[0];
+    private boolean uniform;
+
+    public void prepare(double[] fitness, int first, int length) {
+        super.prepare(fitness, first, length);
+        if (probability.length < length) {
+            probability = new double[length];
+            alias = new int[length];
+            small = new int[length];
+            large = new int[length];
+        }
+
+        int i;
+        double min = minimum();
+        double total = 0;
+        for (i = 0; i < length; i++) total += fitness[first + i] - min;
+        uniform = total <= 0;
+        if (uniform) return;
+
+        // Scale shares so that the average slot holds exactly 1
+        int smallNo = 0, largeNo = 0;
+        for (i = 0; i < length; i++) {
+            probability[i] = (fitness[first + i] - min) * length / total;
+            if (probability[i] < 1) small[smallNo++] = i;
+            else large[largeNo++] = i;
+        }
+        // Fill every under-full slot with the excess of an over-full one
+        while (smallNo > 0 && largeNo > 0) {
+            int s = small[--smallNo];
+            int l = large[--largeNo];
+            alias[s] = l;
+            probability[l] = (probability[l] + probability[s]) - 1;
+            if (probability[l] < 1) small[smallNo++] = l;
+            else large[largeNo++] = l;
+        }
+        // Whatever is left is full up to rounding errors
+        while (largeNo > 0) probability[large[--largeNo]] = 1;
+        while (smallNo > 0) probability[small[--smallNo]] = 1;
+    }
+
+    public int select(Random random) {
+        int slot = random.nextInt(length);
+        if (uniform || random.nextDouble() < probability[slot]) return first + slot;
+        return first + alias[slot];
+    }
+}
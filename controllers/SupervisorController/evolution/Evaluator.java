@@ -0,0 +1,16 @@
+package evolution;
+
+/**
+ * Assesses individuals of a population. An evaluator runs the trial of one genome - in Webots, in a local simulator
+ * or with a synthetic fitness function - and reports the fitness it scored on every game.
+ */
+public interface Evaluator {
+
+    /**
+     * Runs the trial of one individual
+     * @param population    Population the individual belongs to
+     * @param individual    Index of individual in population
+     * @param fitness       Array of length GAME_POP_SIZE that receives individual's raw fitness on every game
+     */
+    void evaluate(Population population, int individual, double[] fitness);
+}
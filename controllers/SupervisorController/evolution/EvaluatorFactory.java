@@ -0,0 +1,14 @@
+package evolution;
+
+/**
+ * Creates evaluators for parallel evaluation. Evaluators usually keep state between trials (a simulator, a
+ * connection to a robot), so every worker thread gets an evaluator of its own.
+ */
+public interface EvaluatorFactory {
+
+    /**
+     * @param worker    Index of worker the evaluator will be used by
+     * @return          New evaluator, used by one thread only
+     */
+    Evaluator create(int worker);
+}
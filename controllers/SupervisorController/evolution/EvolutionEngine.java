@@ -0,0 +1,817 @@
+package evolution;
+
+import nn.FeedForward;
+import utils.Events;
+import utils.Metrics;
+import utils.Mutation;
+import utils.Ranking;
+import utils.Rng;
+import utils.Util;
+
+/**
+ * Evolution of neural network genomes that does not depend on Webots. The engine owns the population, computes the
+ * statistics of every generation and breeds the next one, either with VEGA multi-objective optimisation (one
+ * subpopulation per game), with NSGA-II (Pareto fronts over the games) or with elitism on the summed fitness.
+ * Individuals are assessed by an Evaluator, or by a caller that writes fitness scores straight into the population's
+ * fitness columns (as the supervisor does).
+ * In steady state there are no generations to wait for: every evaluated offspring replaces the worst individual and a
+ * new one is bred at once (see nextOffspring()). Every NN_POP_SIZE evaluations count as one generation for the
+ * statistics and the listener.
+ * As one island of several (see Migration), the engine exchanges its best individuals with other islands after the
+ * listener has seen a generation and before the next one is bred.
+ */
+public class EvolutionEngine {
+
+    // Breeding algorithms
+    public static final int VEGA = 0;
+    public static final int ELITISM = 1;
+    public static final int NSGA2 = 2;
+    public static final int STEADY_STATE = 3;                         // Run with runSteadyState(), not generation by generation
+
+    // Normalisation ranges of raw fitness scores, see setFitnessRanges()
+    private double[] GAME_MIN = {-1410, -1890, -940};                 // Avoiding obstacles, following wall, following line
+    private double[] GAME_MAX = {940, 470, 470};
+    private double SUM_MIN = -3800;                                   // Sum on all games
+    private double SUM_MAX = 1880;
+
+    private static final Metrics.Histogram GENERATION_TIME = Metrics.histogram("generation.ns");
+    private static final Metrics.Histogram BREEDING_TIME = Metrics.histogram("breeding.ns");
+    private static final Metrics.Histogram OFFSPRING_TIME = Metrics.histogram("offspring.ns");
+
+    private int NN_POP_SIZE;
+    private int GAME_POP_SIZE;
+    private int SUBSET_SIZE;
+    private int NB_GENES;
+    private double ELITISM_RATIO = 0.1;
+    private double REPRODUCTION_RATIO = 0.4;                // If not using roulette wheel (truncation selection), we need reproduction ratio
+    private double CROSSOVER_PROBABILITY = 0.5;             // Probability of having a crossover
+    private double MUTATION_PROBABILITY = 0.1;              // Probability of mutating each weight-value in a genome
+    private int GENE_MIN = -1;                              // Range of genes: minimum value
+    private int GENE_MAX = 1;                               // Range of genes: maximum value
+    private double MUTATION_SIGMA = 0.2;                    // Mutations follow a normal distribution around the gene with this sigma
+    private int ROULETTE_WHEEL = 1;
+    private int TOURNAMENT_SIZE = 2;                        // Candidates of every parent tournament in steady state
+    private int algorithm = VEGA;
+    private int generation = 0;
+
+    private Mutation mutation;                              // Gaussian mutation with geometric skips between mutated genes
+    private Population population;                          // Current generation
+    private Population offspring;                           // Back buffer the next generation is bred into
+    private double[] fitnessNN;                             // Summed fitness column of population
+    private double[][] fitnessPerGame;                      // Fitness columns of population for each game
+    private double[] rawFitnessNN;                          // Summed fitness of the last generation before normalising
+    private double[][] rawFitnessPerGame;                   // Fitness of the last generation on each game before normalising
+    private int[] ranking;                                  // Indexes of individuals, best summed fitness first
+    private int[] rankingScratch;
+    private double[] trialFitness;                          // Fitness reported by evaluator for one trial
+
+    // Statistics of the last evaluated generation
+    private double minFitNN = 0.0, avgFitNN = 0.0, bestFitNN = 0.0, absBestFitNN = -10000;
+    private int bestNN = -1, absBestNN = -1;
+    private boolean newAbsBest = false;
+    private double[][] stats;                               // Average, best, worst and best index for each game
+    private double[] eliteCutoffs;                          // Raw fitness of the worst elite on each game
+
+    private Selection selection;                            // Draws parents from mating pools
+    private int[] pool;                                     // Mating pool of one subpopulation
+    private int[] matingPool;                               // Merged mating pools of all subpopulations
+
+    // NSGA-II
+    private Population survivors;                           // Parents that survived the last generation, with fitness
+    private Population merged;                              // Evaluated offspring and survivors competing for survival
+    private boolean hasSurvivors;
+    private NonDominatedSort nonDominatedSort;
+    private int[] survivorFront;                            // Pareto front of every survivor
+    private double[] survivorCrowding;                      // Crowding distance of every survivor in its front
+    private int[] frontOrder, frontScratch;
+
+    // Steady state: population holds raw fitness of the individuals evaluated so far
+    private TournamentSelection tournament;                 // Draws parents on summed raw fitness
+    private int dispatched;                                 // Genomes handed out for evaluation
+    private int filled;                                     // Evaluated individuals in population, NN_POP_SIZE once full
+    private int reported;                                   // Evaluations reported in current generation
+
+    // Island model
+    private Migration migration;
+    private Population emigrants;                           // Best individuals sent to other islands, raw fitness
+    private Population immigrants;                          // Individuals received from other islands, raw fitness
+
+    private EvolutionListener listener;
+    private long seed;                                      // Master seed of the evolution
+    private Rng random;                                     // Stream used for breeding
+    private int nextId;                                     // Identifier given to the next genome
+    private Events.Generation generationEvent;              // Evaluation of current generation
+    private long generationStart;
+
+    public EvolutionEngine(int NN_POP_SIZE, int GAME_POP_SIZE, int NB_INPUTS, int NB_OUTPUTS, int NB_HIDDEN_NEURONS) {
+        this(NN_POP_SIZE, GAME_POP_SIZE, NB_INPUTS, NB_OUTPUTS, NB_HIDDEN_NEURONS, System.nanoTime());
+    }
+
+    /**
+     * @param seed  Master seed; two engines with the same seed and evaluators produce identical evolutions
+     */
+    public EvolutionEngine(int NN_POP_SIZE, int GAME_POP_SIZE, int NB_INPUTS, int NB_OUTPUTS, int NB_HIDDEN_NEURONS,
+                           long seed) {
+        this.NN_POP_SIZE = NN_POP_SIZE;
+        this.GAME_POP_SIZE = GAME_POP_SIZE;
+        this.SUBSET_SIZE = NN_POP_SIZE / GAME_POP_SIZE;
+
+        NB_GENES = new FeedForward(NB_INPUTS, NB_OUTPUTS, NB_HIDDEN_NEURONS).getWeightsNo();
+        mutation = new Mutation(MUTATION_PROBABILITY, MUTATION_SIGMA, GENE_MIN, GENE_MAX);
+        population = new Population(NN_POP_SIZE, NB_GENES, GAME_POP_SIZE);
+        offspring = new Population(NN_POP_SIZE, NB_GENES, GAME_POP_SIZE);
+        fitnessNN = population.getFitness();
+        fitnessPerGame = population.getObjectives();
+        ranking = new int[NN_POP_SIZE];
+        rankingScratch = new int[NN_POP_SIZE];
+        trialFitness = new double[GAME_POP_SIZE];
+        rawFitnessNN = new double[NN_POP_SIZE];
+        rawFitnessPerGame = new double[GAME_POP_SIZE][NN_POP_SIZE];
+        stats = new double[GAME_POP_SIZE][4];
+        eliteCutoffs = new double[GAME_POP_SIZE];
+        selection = new RouletteSelection();
+        pool = new int[NN_POP_SIZE];
+        matingPool = new int[NN_POP_SIZE];
+        tournament = new TournamentSelection(TOURNAMENT_SIZE);
+        setSeed(seed);
+        random = new Rng(seed, -1);
+        startGenerationEvent();
+    }
+
+    /**
+     * Sets master seed of the evolution. Takes effect for the next call of initialise().
+     * @param seed  Master seed
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Initiate genes of all individuals randomly and start a new evolution
+     */
+    public void initialise() {
+        int i, j;
+        random = new Rng(seed, -1);
+        for (i = 0; i < NN_POP_SIZE; i++) {
+            for (j = 0; j < NB_GENES; j++) {
+                // all genes must be in the range of [-1, 1]
+                population.setGene(i, j, (float) ((GENE_MAX - GENE_MIN) * random.nextFloat() - (GENE_MAX - GENE_MIN) / 2.0));
+            }
+        }
+        population.resetFitness(0);
+        generation = 0;
+        nextId = 0;
+        hasSurvivors = false;
+        dispatched = 0;
+        filled = 0;
+        reported = 0;
+        startGenerationEvent();
+        for (i = 0; i < NN_POP_SIZE; i++) population.setParent(i, -1);
+        assignSeeds();
+        assignIds();
+    }
+
+    /**
+     * Gives every individual of current generation its own random stream, derived from master seed, generation
+     * and index of individual
+     */
+    private void assignSeeds() {
+        for (int i = 0; i < NN_POP_SIZE; i++) population.setSeed(i, Rng.mix(seed, generation, i));
+    }
+
+    /**
+     * Gives every genome of current generation a new identifier. Identifiers wrap at 2^24, so they are exact as
+     * floats in messages to the robot.
+     */
+    private void assignIds() {
+        for (int i = 0; i < NN_POP_SIZE; i++) {
+            population.setId(i, nextId);
+            nextId = (nextId + 1) & 0xFFFFFF;
+        }
+    }
+
+    /**
+     * Runs the trial of every individual of current generation, one after another
+     * @param evaluator     Evaluator that assesses individuals
+     */
+    public void evaluate(Evaluator evaluator) {
+        for (int i = 0; i < NN_POP_SIZE; i++) {
+            evaluator.evaluate(population, i, trialFitness);
+            for (int k = 0; k < GAME_POP_SIZE; k++) fitnessPerGame[k][i] = trialFitness[k];
+        }
+    }
+
+    /**
+     * Evaluates current generation and replaces it with its offspring
+     * @param evaluator     Evaluator that assesses individuals
+     */
+    public void runGeneration(Evaluator evaluator) {
+        evaluate(evaluator);
+        nextGeneration();
+    }
+
+    /**
+     * Evaluates current generation on a pool of evaluators running in parallel and replaces it with its offspring
+     * @param evaluator     Parallel evaluator that assesses individuals
+     */
+    public void runGeneration(ParallelEvaluator evaluator) {
+        evaluator.evaluate(population);
+        nextGeneration();
+    }
+
+    /**
+     * Runs a steady state evolution, trials one after another
+     * @param evaluator     Evaluator that assesses individuals
+     * @param generations   Number of evaluations to run, in multiples of NN_POP_SIZE
+     */
+    public void runSteadyState(Evaluator evaluator, int generations) {
+        Population pending = new Population(1, NB_GENES, GAME_POP_SIZE);
+        for (int i = 0; i < generations * NN_POP_SIZE; i++) {
+            nextOffspring(pending, 0);
+            evaluator.evaluate(pending, 0, trialFitness);
+            for (int k = 0; k < GAME_POP_SIZE; k++) pending.setObjective(k, 0, trialFitness[k]);
+            offspringEvaluated(pending, 0);
+        }
+    }
+
+    /**
+     * Runs a steady state evolution on a pool of evaluators; a worker that finishes a trial reports it and starts the
+     * next one straight away, so no worker waits for the slowest one of a generation
+     * @param evaluator     Parallel evaluator that assesses individuals
+     * @param generations   Number of evaluations to run, in multiples of NN_POP_SIZE
+     */
+    public void runSteadyState(ParallelEvaluator evaluator, int generations) {
+        evaluator.evolve(this, generations * NN_POP_SIZE);
+    }
+
+    /**
+     * Steady state: writes the next genome to evaluate into a slot of the caller's population. Until every
+     * individual of the initial population has been handed out those are evaluated; after that each genome is an
+     * offspring of parents drawn by tournaments among the evaluated individuals, crossed over and mutated. Safe to
+     * call from several threads.
+     * @param pending   Population of genomes under evaluation, with the engine's number of genes and games
+     * @param slot      Index of individual in pending that receives the genome, its seed and identifier
+     */
+    public synchronized void nextOffspring(Population pending, int slot) {
+        long start = System.nanoTime();
+        if (dispatched < NN_POP_SIZE || filled == 0) {
+            // With more workers than individuals, the initial ones are evaluated again until one has been reported
+            int i = dispatched % NN_POP_SIZE;
+            pending.copyGenome(population, i, slot);
+            pending.setId(slot, population.getId(i));
+            pending.setParent(slot, -1);
+        } else {
+            tournament.prepare(fitnessNN, 0, filled);
+            int ind1 = tournament.select(random);
+            if (random.nextFloat() < CROSSOVER_PROBABILITY) {
+                int ind2 = tournament.select(random);
+                pending.crossover(population, ind1, ind2, crossoverPoint(), slot);
+            } else {
+                pending.copyGenome(population, ind1, slot);
+            }
+            mutation.mutate(pending.getGenes(), pending.offset(slot), NB_GENES, random);
+            pending.setId(slot, nextId);
+            nextId = (nextId + 1) & 0xFFFFFF;
+        }
+        pending.setSeed(slot, Rng.mix(seed, dispatched / NN_POP_SIZE, dispatched % NN_POP_SIZE));
+        dispatched++;
+        OFFSPRING_TIME.record(System.nanoTime() - start);
+    }
+
+    /**
+     * Steady state: takes an evaluated genome into the population. While the population is filling up it takes the
+     * next free place; after that it replaces the individual with the worst summed fitness, unless it is worse
+     * itself. Every NN_POP_SIZE evaluations statistics of the population are computed and the listener notified,
+     * as at the end of a generation. Safe to call from several threads.
+     * @param pending   Population of genomes under evaluation; raw fitness must be in its fitness columns
+     * @param slot      Index of evaluated individual in pending
+     */
+    public synchronized void offspringEvaluated(Population pending, int slot) {
+        double sum = 0;
+        for (int k = 0; k < GAME_POP_SIZE; k++) sum += pending.getObjective(k, slot);
+        pending.setFitness(slot, sum);
+
+        if (filled < NN_POP_SIZE) {
+            population.copyIndividual(pending, slot, filled++);
+        } else {
+            int worst = Ranking.argMin(fitnessNN, NN_POP_SIZE);
+            if (sum >= fitnessNN[worst]) population.copyIndividual(pending, slot, worst);
+        }
+
+        if (++reported == NN_POP_SIZE) endSteadyStateGeneration();
+    }
+
+    /**
+     * Computes statistics of the steady state population and notifies the listener, then puts raw fitness back into
+     * the fitness columns for the replacements to come
+     */
+    private void endSteadyStateGeneration() {
+        int k;
+        GENERATION_TIME.record(System.nanoTime() - generationStart);
+        generationEvent.generation = generation;
+        generationEvent.commit();
+
+        computeStatistics();
+        if (listener != null) listener.generationEvaluated(this);
+
+        System.arraycopy(rawFitnessNN, 0, fitnessNN, 0, NN_POP_SIZE);
+        for (k = 0; k < GAME_POP_SIZE; k++) System.arraycopy(rawFitnessPerGame[k], 0, fitnessPerGame[k], 0, NN_POP_SIZE);
+        migrate(false);
+        reported = 0;
+        generation++;
+        startGenerationEvent();
+    }
+
+    /**
+     * Computes statistics of the evaluated generation, notifies the listener and breeds the next generation.
+     * Fitness columns of population must hold raw fitness scores of every individual on every game.
+     */
+    public void nextGeneration() {
+        GENERATION_TIME.record(System.nanoTime() - generationStart);
+        generationEvent.generation = generation;
+        generationEvent.commit();
+
+        computeStatistics();
+        if (listener != null) listener.generationEvaluated(this);
+        migrate(true);
+
+        Events.Breeding breeding = new Events.Breeding();
+        breeding.begin();
+        long start = System.nanoTime();
+        if (algorithm == VEGA) createNewVEGApopulation();
+        else if (algorithm == NSGA2) createNewNSGA2population();
+        else createNewPopulation();
+        BREEDING_TIME.record(System.nanoTime() - start);
+        breeding.generation = generation;
+        breeding.commit();
+
+        population.resetFitness(0);
+        generation++;
+        assignSeeds();
+        assignIds();
+        startGenerationEvent();
+    }
+
+    /**
+     * Island model: sends the best individuals of the evaluated population to other islands and replaces the worst
+     * ones with individuals received from them. Immigrants keep the fitness they scored on their own island and get
+     * new identifiers, as identifiers are only unique within one island.
+     * @param normalised    True if fitness columns are normalised, false if they hold raw fitness (steady state)
+     */
+    private void migrate(boolean normalised) {
+        int i, k;
+        if (migration == null || !migration.isDue(generation)) return;
+        Ranking.identity(ranking, NN_POP_SIZE);
+        Ranking.sort(fitnessNN, ranking, rankingScratch, NN_POP_SIZE);
+
+        int size = emigrants.getSize();
+        for (i = 0; i < size; i++) {
+            int s = ranking[i];
+            emigrants.copyIndividual(population, s, i);
+            emigrants.setFitness(i, rawFitnessNN[s]);
+            for (k = 0; k < GAME_POP_SIZE; k++) emigrants.setObjective(k, i, rawFitnessPerGame[k][s]);
+        }
+        migration.send(emigrants, generation);
+
+        int n = Math.min(migration.receive(immigrants), NN_POP_SIZE - size);
+        for (i = 0; i < n; i++) {
+            int s = ranking[NN_POP_SIZE - 1 - i];
+            population.copyIndividual(immigrants, i, s);
+            population.setId(s, nextId);
+            population.setParent(s, -1);
+            nextId = (nextId + 1) & 0xFFFFFF;
+            if (!normalised) continue;
+            fitnessNN[s] = normalise(fitnessNN[s], SUM_MIN, SUM_MAX);
+            for (k = 0; k < GAME_POP_SIZE; k++) {
+                fitnessPerGame[k][s] = normalise(fitnessPerGame[k][s], gameMin(k), gameMax(k));
+            }
+        }
+    }
+
+    /**
+     * Starts timing the evaluation of current generation
+     */
+    private void startGenerationEvent() {
+        generationEvent = new Events.Generation();
+        generationEvent.begin();
+        generationStart = System.nanoTime();
+    }
+
+    /**
+     * Sums and normalises fitness scores, sorts the population and updates statistics of every game
+     */
+    private void computeStatistics() {
+        int i, j;
+
+        // Set fitness - sum of fitness scores for all games
+        for (j = 0; j < NN_POP_SIZE; j++) fitnessNN[j] = 0;
+        for (i = 0; i < GAME_POP_SIZE; i++) {
+            for (j = 0; j < NN_POP_SIZE; j++) {
+                fitnessNN[j] += fitnessPerGame[i][j];
+            }
+            System.arraycopy(fitnessPerGame[i], 0, rawFitnessPerGame[i], 0, NN_POP_SIZE);
+        }
+        System.arraycopy(fitnessNN, 0, rawFitnessNN, 0, NN_POP_SIZE);
+        normaliseFitnessScore(fitnessNN, SUM_MIN, SUM_MAX);
+
+        // Find current and absolute best individual
+        bestNN = Ranking.argMax(fitnessNN, NN_POP_SIZE);
+        bestFitNN = fitnessNN[bestNN];
+        minFitNN = fitnessNN[Ranking.argMin(fitnessNN, NN_POP_SIZE)];
+        avgFitNN = Util.mean(fitnessNN);
+        newAbsBest = bestFitNN > absBestFitNN;
+        if (newAbsBest) {
+            absBestFitNN = bestFitNN;
+            absBestNN = bestNN;
+        }
+
+        // Statistics of each game
+        int eliteSize = Math.max(1, (int) (NN_POP_SIZE * ELITISM_RATIO));
+        for (i = 0; i < GAME_POP_SIZE; i++) {
+            // Elite cutoff is kept in raw units, the ones trials are scored in
+            Ranking.identity(ranking, NN_POP_SIZE);
+            Ranking.selectTop(fitnessPerGame[i], ranking, rankingScratch, NN_POP_SIZE, eliteSize);
+            eliteCutoffs[i] = fitnessPerGame[i][ranking[eliteSize - 1]];
+
+            normaliseFitnessScore(fitnessPerGame[i], gameMin(i), gameMax(i));
+            int best = Ranking.argMax(fitnessPerGame[i], NN_POP_SIZE);
+            if (fitnessPerGame[i][best] > stats[i][1]) {
+                stats[i][3] = best;
+            }
+            stats[i][0] = Util.mean(fitnessPerGame[i]);
+            stats[i][1] = fitnessPerGame[i][best];
+            stats[i][2] = fitnessPerGame[i][Ranking.argMin(fitnessPerGame[i], NN_POP_SIZE)];
+        }
+    }
+
+    /**
+     * Algorithm to perform VEGA Multi-Objective Optimisation. Fitness columns must already be normalised.
+     */
+    private void createNewVEGApopulation() {
+        int i, k;
+        int matingSize = GAME_POP_SIZE * SUBSET_SIZE;
+
+        // 1. Shuffle population - fitness columns are moved together with genomes
+        Util.shuffleList(population, random);
+
+        // 2. divide population into O subpopulations of size N/O
+        for (i = 0; i < GAME_POP_SIZE; i++) {
+
+            // 3. Subpopulation i consists of the next SUBSET_SIZE individuals, assessed on game i only
+            int first = i * SUBSET_SIZE;
+
+            // 4. Use fitness proportionate selection to create a 'mating pool' for each subpopulation
+            selection.prepare(fitnessPerGame[i], first, SUBSET_SIZE);
+            selection.fill(pool, SUBSET_SIZE, random);
+
+            // 5. Replace the subpopulation with a mating pool - only indexes of parents are kept
+            for (k = 0; k < SUBSET_SIZE; k++) matingPool[first + k] = pool[k];
+        }
+
+        // 6. Create new population from the merged 'mating pools' straight into the back buffer
+        // 7. Perform crossover
+        for (i = 0; i < NN_POP_SIZE; i++) {
+            int ind1 = random.nextInt(matingSize);
+            // If we will do crossover, select a second individual
+            if (random.nextFloat() < CROSSOVER_PROBABILITY) {
+                int ind2;
+                do {
+                    ind2 = random.nextInt(matingSize);
+                } while (ind1 == ind2);
+                offspring.crossover(population, matingPool[ind1], matingPool[ind2], crossoverPoint(), i);
+            } else { //if no crossover was done, just copy selected individual directly
+                offspring.copyGenome(population, matingPool[ind1], i);
+            }
+            // 8. Mutate the child in place
+            mutation.mutate(offspring.getGenes(), offspring.offset(i), NB_GENES, random);
+        }
+        swapBuffers();
+    }
+
+    /**
+     * NSGA-II: evaluated offspring and the parents that survived the last generation are sorted into Pareto fronts
+     * over the games; the best NN_POP_SIZE of them, front by front and by crowding distance within the last front,
+     * survive and breed the next offspring, chosen by binary tournaments of the crowded comparison. Fitness columns
+     * must already be normalised.
+     */
+    private void createNewNSGA2population() {
+        int i, f;
+        if (merged == null) {
+            survivors = new Population(NN_POP_SIZE, NB_GENES, GAME_POP_SIZE);
+            merged = new Population(2 * NN_POP_SIZE, NB_GENES, GAME_POP_SIZE);
+            nonDominatedSort = new NonDominatedSort(2 * NN_POP_SIZE);
+            survivorFront = new int[NN_POP_SIZE];
+            survivorCrowding = new double[NN_POP_SIZE];
+            frontOrder = new int[2 * NN_POP_SIZE];
+            frontScratch = new int[2 * NN_POP_SIZE];
+        }
+
+        // 1. Offspring just evaluated and survivors of the last generation compete together
+        for (i = 0; i < NN_POP_SIZE; i++) merged.copyIndividual(population, i, i);
+        int n = NN_POP_SIZE;
+        if (hasSurvivors) {
+            for (i = 0; i < NN_POP_SIZE; i++) merged.copyIndividual(survivors, i, NN_POP_SIZE + i);
+            n = 2 * NN_POP_SIZE;
+        }
+
+        // 2. Pareto fronts and crowding distances
+        int fronts = nonDominatedSort.sort(merged.getObjectives(), n);
+        int[] members = nonDominatedSort.getMembers();
+        int[] front = nonDominatedSort.getFront();
+        double[] crowding = nonDominatedSort.getCrowding();
+
+        // 3. Whole fronts survive while they fit, the least crowded members of the next one fill the rest
+        int count = 0;
+        for (f = 0; f < fronts && count < NN_POP_SIZE; f++) {
+            int start = nonDominatedSort.getFrontStart(f);
+            int size = nonDominatedSort.getFrontStart(f + 1) - start;
+            System.arraycopy(members, start, frontOrder, 0, size);
+            if (count + size > NN_POP_SIZE) Ranking.sort(crowding, frontOrder, frontScratch, size);
+            for (i = 0; i < size && count < NN_POP_SIZE; i++, count++) {
+                int s = frontOrder[i];
+                survivors.copyIndividual(merged, s, count);
+                survivorFront[count] = front[s];
+                survivorCrowding[count] = crowding[s];
+            }
+        }
+        hasSurvivors = true;
+
+        // 4. Offspring of survivors chosen by binary tournaments, straight into the back buffer
+        for (i = 0; i < NN_POP_SIZE; i++) {
+            int ind1 = crowdedTournament();
+            if (random.nextFloat() < CROSSOVER_PROBABILITY) {
+                int ind2 = crowdedTournament();
+                offspring.crossover(survivors, ind1, ind2, crossoverPoint(), i);
+            } else {
+                offspring.copyGenome(survivors, ind1, i);
+            }
+            mutation.mutate(offspring.getGenes(), offspring.offset(i), NB_GENES, random);
+        }
+        swapBuffers();
+    }
+
+    /**
+     * Binary tournament among survivors: lower front wins, then larger crowding distance
+     * @return  Index of winner in survivors
+     */
+    private int crowdedTournament() {
+        int a = random.nextInt(NN_POP_SIZE);
+        int b = random.nextInt(NN_POP_SIZE);
+        if (survivorFront[a] != survivorFront[b]) return survivorFront[a] < survivorFront[b] ? a : b;
+        return survivorCrowding[a] >= survivorCrowding[b] ? a : b;
+    }
+
+    /**
+     * Method to create a new population from the population ranked by summed fitness.
+     * New population is created using elitism, crossover and mutation.
+     */
+    private void createNewPopulation() {
+        int elitism_counter = (int) (NN_POP_SIZE*ELITISM_RATIO);
+        int i;
+
+        // Only the elite, or the ranks truncation selection draws from, need to be ordered
+        int ranked = elitism_counter;
+        if (ROULETTE_WHEEL != 1) ranked = Math.max(ranked, (int) Math.ceil(NN_POP_SIZE * REPRODUCTION_RATIO));
+        Ranking.identity(ranking, NN_POP_SIZE);
+        Ranking.selectTop(fitnessNN, ranking, rankingScratch, NN_POP_SIZE, ranked);
+
+        // Selection table is built once for the whole generation
+        if (ROULETTE_WHEEL == 1) selection.prepare(fitnessNN, 0, NN_POP_SIZE);
+
+        // Create new population in the back buffer
+        for(i=0; i<NN_POP_SIZE; i++) {
+
+            //the elitism_counter best individuals are simply copied to the new population
+            if (i < elitism_counter) {
+                offspring.copyGenome(population, ranking[i], i);
+            }
+            //the other individuals are generated through the crossover of two parents
+            else {
+
+                //select non-elitist individual
+                int ind1 = selectParent(elitism_counter);
+
+                //if we will do crossover, select a second individual
+                if (random.nextFloat() < CROSSOVER_PROBABILITY) {
+                    int ind2 = selectParent(elitism_counter);
+                    if (ROULETTE_WHEEL != 1) {
+                        while (ind1 == ind2) ind2 = selectParent(elitism_counter);
+                    }
+                    offspring.crossover(population, ind1, ind2, crossoverPoint(), i);
+                }
+                else { //if no crossover was done, just copy selected individual directly
+                    offspring.copyGenome(population, ind1, i);
+                }
+
+                // Mutate with probability per gene, no mutation for elitists
+                mutation.mutate(offspring.getGenes(), offspring.offset(i), NB_GENES, random);
+            }
+        }
+        swapBuffers();
+    }
+
+    /**
+     * Makes the bred offspring the current population. The evaluated generation becomes the back buffer and is
+     * overwritten by the next breeding.
+     */
+    private void swapBuffers() {
+        Population temp = population;
+        population = offspring;
+        offspring = temp;
+        fitnessNN = population.getFitness();
+        fitnessPerGame = population.getObjectives();
+    }
+
+    /**
+     * Selects a non-elitist parent, either with the selection scheme or with truncation selection
+     * @param elitism_counter   Number of elitist individuals
+     * @return                  Index of selected individual in population
+     */
+    private int selectParent(int elitism_counter) {
+        if (ROULETTE_WHEEL == 1) return selection.select(random);
+        int rank = (int) (elitism_counter + random.nextFloat() * (NN_POP_SIZE * REPRODUCTION_RATIO - elitism_counter));
+        return ranking[rank];
+    }
+
+    /**
+     * Draws crossover point for one point crossover
+     * @return  Index of last gene inherited from the first parent
+     */
+    private int crossoverPoint() {
+        return (int) Math.floor(NB_GENES * random.nextFloat());
+    }
+
+    /**
+     * Method to normalise fitness scores into [0,1] range
+     * @param fitnessScores     Array of fitness scores
+     * @param min               Lowest raw fitness score
+     * @param max               Highest raw fitness score
+     */
+    private void normaliseFitnessScore(double[] fitnessScores, double min, double max) {
+        for (int i = 0; i < fitnessScores.length; i++) fitnessScores[i] = normalise(fitnessScores[i], min, max);
+    }
+
+    /**
+     * @param fitness   Raw fitness score
+     * @param min       Lowest raw fitness score
+     * @param max       Highest raw fitness score
+     * @return          Fitness score in [0,1] range, 0 if the range is not valid
+     */
+    private double normalise(double fitness, double min, double max) {
+        try {
+            return Util.normalize(min, max, fitness);
+        } catch (Exception e) {
+            System.err.println("Error while normalizing: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    private double gameMin(int gameNo) {
+        return gameNo < GAME_MIN.length ? GAME_MIN[gameNo] : 0;
+    }
+
+    private double gameMax(int gameNo) {
+        return gameNo < GAME_MAX.length ? GAME_MAX[gameNo] : 0;
+    }
+
+    /* Getters and setters */
+
+    public Population getPopulation() {
+        return population;
+    }
+
+    public int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Raw fitness an individual had to score on each game of the last evaluated generation to be among its best
+     * ELITISM_RATIO. A trial that cannot reach the cutoff on any game can be abandoned (racing).
+     * @return  Cutoff of each game
+     */
+    public double[] getEliteCutoffs() {
+        return eliteCutoffs;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public int getGenesNo() {
+        return NB_GENES;
+    }
+
+    public int getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * Selects the breeding algorithm; may be changed between generations
+     * @param algorithm     VEGA, ELITISM, NSGA2 or STEADY_STATE
+     */
+    public void setAlgorithm(int algorithm) {
+        this.algorithm = algorithm;
+    }
+
+    /**
+     * @param name  VEGA, ELITISM, NSGA2 or STEADY_STATE, in any case
+     * @return      Breeding algorithm of that name, VEGA if the name is unknown
+     */
+    public static int algorithmOf(String name) {
+        if (name.equalsIgnoreCase("ELITISM")) return ELITISM;
+        if (name.equalsIgnoreCase("NSGA2")) return NSGA2;
+        if (name.equalsIgnoreCase("STEADY_STATE")) return STEADY_STATE;
+        if (!name.equalsIgnoreCase("VEGA")) System.err.println("Unknown algorithm " + name + ", using VEGA");
+        return VEGA;
+    }
+
+    /**
+     * Replaces the ranges raw fitness scores are normalised from, e.g. for games other than the e-puck's three
+     * @param GAME_MIN  Lowest raw fitness on each game
+     * @param GAME_MAX  Highest raw fitness on each game
+     * @param SUM_MIN   Lowest raw fitness summed on all games
+     * @param SUM_MAX   Highest raw fitness summed on all games
+     */
+    public void setFitnessRanges(double[] GAME_MIN, double[] GAME_MAX, double SUM_MIN, double SUM_MAX) {
+        this.GAME_MIN = GAME_MIN.clone();
+        this.GAME_MAX = GAME_MAX.clone();
+        this.SUM_MIN = SUM_MIN;
+        this.SUM_MAX = SUM_MAX;
+    }
+
+    public Selection getSelection() {
+        return selection;
+    }
+
+    /**
+     * @param selection     Scheme used to draw parents: roulette wheel, alias table, tournament or universal sampling
+     */
+    public void setSelection(Selection selection) {
+        this.selection = selection;
+    }
+
+    /**
+     * Makes the engine one island of several
+     * @param migration     Exchange of individuals with other islands, null for a single population
+     */
+    public void setMigration(Migration migration) {
+        this.migration = migration;
+        if (migration == null) return;
+        int size = Math.min(migration.getSize(), NN_POP_SIZE / 2);
+        emigrants = new Population(size, NB_GENES, GAME_POP_SIZE);
+        immigrants = new Population(Math.max(1, size * migration.getSources()), NB_GENES, GAME_POP_SIZE);
+    }
+
+    public void setListener(EvolutionListener listener) {
+        this.listener = listener;
+    }
+
+    public double[][] getStats() {
+        return stats;
+    }
+
+    /**
+     * @return  Summed fitness of every individual of the last evaluated generation, before normalising
+     */
+    public double[] getRawFitness() {
+        return rawFitnessNN;
+    }
+
+    /**
+     * @return  Fitness of every individual on each game of the last evaluated generation, before normalising
+     */
+    public double[][] getRawObjectives() {
+        return rawFitnessPerGame;
+    }
+
+    public double getBestFitness() {
+        return bestFitNN;
+    }
+
+    public double getAverageFitness() {
+        return avgFitNN;
+    }
+
+    public double getWorstFitness() {
+        return minFitNN;
+    }
+
+    public int getBestIndex() {
+        return bestNN;
+    }
+
+    public double getAbsBestFitness() {
+        return absBestFitNN;
+    }
+
+    public int getAbsBestIndex() {
+        return absBestNN;
+    }
+
+    /**
+     * @return  True if best individual of the last evaluated generation is the best one seen so far
+     */
+    public boolean isNewAbsBest() {
+        return newAbsBest;
+    }
+}
@@ -0,0 +1,14 @@
+package evolution;
+
+/**
+ * Notified by EvolutionEngine once a generation has been assessed, before its offspring are bred. At that point
+ * the engine's statistics describe the generation and the population still holds the evaluated genomes.
+ */
+public interface EvolutionListener {
+
+    /**
+     * Called after statistics of current generation have been computed
+     * @param engine    Engine that evaluated the generation
+     */
+    void generationEvaluated(EvolutionEngine engine);
+}
@@ -0,0 +1,114 @@
+package evolution;
+
+import utils.AsyncLog;
+import utils.FilesFunctions;
+import utils.FitnessStore;
+import utils.Metrics;
+
+import java.io.IOException;
+
+/**
+ * Writes statistics and genomes of every evaluated generation into the files in out/ directory and prints a
+ * summary of each game to the console. Text files and the genome archive are written by the background thread of an
+ * AsyncLog, so a generation is never held up by the disk; fitness of every individual goes into a FitnessStore,
+ * which "java utils.FitnessStore out/fitness file.csv" exports as CSV.
+ * Metrics of the run so far replace the contents of out/metrics.txt after every generation.
+ */
+public class EvolutionLogger implements EvolutionListener {
+
+    private AsyncLog log;
+    private int bestFile, genomesFile, bestIndivFile;
+    private String ARCHIVE = "out/genomes";                 // Binary archive of all generations, see GenomeArchive
+    private GenomeArchive archive;
+    private String FITNESS = "out/fitness";                 // Columnar fitness of all generations, see FitnessStore
+    private FitnessStore fitness;
+    private String METRICS = "out/metrics.txt";
+    private Runnable dumpMetrics = new Runnable() {         // Runs on the writer thread
+        public void run() {
+            Metrics.dump(METRICS);
+        }
+    };
+
+    /**
+     * @param NN_POP_SIZE       Number of individuals
+     * @param GAME_POP_SIZE     Number of games
+     * @param NB_GENES          Number of genes of an individual
+     */
+    public EvolutionLogger(int NN_POP_SIZE, int GAME_POP_SIZE, int NB_GENES) {
+        // Room for the genomes of two generations, so one can be queued while the other is written
+        log = new AsyncLog(256, Math.max(1 << 18, 2 * NN_POP_SIZE * NB_GENES));
+        bestFile = log.open("out/results:bestgenome.txt", false);
+        genomesFile = log.open("out/results:genomes.txt", true);
+        bestIndivFile = log.open("out/best_actor.txt", true);
+    }
+
+    public void generationEvaluated(EvolutionEngine engine) {
+        int generation = engine.getGeneration();
+        Population population = engine.getPopulation();
+        double[][] stats = engine.getStats();
+
+        for (int i = 0; i < stats.length; i++) {
+            System.out.println("Game: " + i + " stats");
+            System.out.println("Best fitness score: " + stats[i][1]);
+            System.out.println("Average fitness score: " + stats[i][0]);
+            System.out.println("Worst fitness score: " + stats[i][2]);
+            System.out.println("Best index: " + (int) stats[i][3]);
+        }
+        System.out.println("Best fitness score: " + engine.getBestFitness() + ". Index: " + engine.getBestIndex());
+        System.out.println("Absolute best index: " + engine.getAbsBestIndex());
+
+        if (engine.isNewAbsBest()) {
+            FilesFunctions.logBest(log, bestFile, generation, population.getGenesNo(), engine.getAbsBestIndex(),
+                    population);
+        }
+        FilesFunctions.logLastGeneration(log, genomesFile, population);                    // Stores weights
+        FilesFunctions.logBestIndiv(log, bestIndivFile, population, engine.getBestIndex());    // Weights of best individual
+
+        try {
+            if (fitness == null) fitness = FitnessStore.create(FITNESS, log);
+            storeFitness(engine, generation);
+        } catch (IOException e) {
+            System.err.println("Cannot store fitness of generation " + generation + ": " + e.getMessage());
+        }
+
+        try {
+            if (archive == null) {
+                archive = GenomeArchive.create(ARCHIVE, population.getGenesNo(), population.getObjectivesNo(), log);
+            }
+            archive.append(population, generation);
+        } catch (IOException e) {
+            System.err.println("Cannot archive generation " + generation + ": " + e.getMessage());
+        }
+        log.submit(dumpMetrics);
+    }
+
+    /**
+     * Stores one block per generation: summed fitness of every individual as game -1, then its fitness on each game
+     */
+    private void storeFitness(EvolutionEngine engine, int generation) throws IOException {
+        Population population = engine.getPopulation();
+        double[] raw = engine.getRawFitness();
+        double[][] rawPerGame = engine.getRawObjectives();
+        int i, k;
+        for (i = 0; i < population.getSize(); i++) {
+            fitness.add(generation, i, -1, raw[i], population.getFitness(i));
+            for (k = 0; k < population.getObjectivesNo(); k++) {
+                fitness.add(generation, i, k, rawPerGame[k][i], population.getObjective(k, i));
+            }
+        }
+        fitness.endBlock();
+    }
+
+    /**
+     * Writes pending records and closes the files
+     */
+    public void close() {
+        log.close();
+        try {
+            if (fitness != null) fitness.close();
+            if (archive != null) archive.close();
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+        }
+    }
+}
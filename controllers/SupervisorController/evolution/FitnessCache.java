@@ -0,0 +1,165 @@
+package evolution;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Memoises fitness of genomes, so that elites and clones surviving crossover and mutation unchanged are not sent for
+ * another full trial. Entries are keyed by the genome's weights and by a context identifying everything else the
+ * fitness depends on (world, game constants); the least recently used entries are evicted once the cache is full.
+ * When trials are noisy, a genome is evaluated up to SAMPLES times and then scored with the mean of its samples.
+ * The cache is not thread safe.
+ */
+public class FitnessCache {
+
+    private int CAPACITY;                   // Maximal number of genomes kept
+    private int SAMPLES;                    // Trials a genome needs before its fitness is served from the cache
+    private int objectivesNo;
+    private long context;                   // Identity of world and games the cached fitness was measured in
+    private LinkedHashMap<Key, Entry> entries;
+    private Key probe = new Key();          // Reused to look genomes up without copying them
+    private long hits, misses;
+
+    /**
+     * @param CAPACITY      Maximal number of genomes kept
+     * @param SAMPLES       Trials a genome needs before it is served from the cache; 1 if trials are deterministic
+     * @param objectivesNo  Number of games
+     */
+    public FitnessCache(final int CAPACITY, int SAMPLES, int objectivesNo) {
+        this.CAPACITY = CAPACITY;
+        this.SAMPLES = SAMPLES;
+        this.objectivesNo = objectivesNo;
+        // Access order turns the map into an LRU list, evicting on insertion past capacity
+        this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<Key, FitnessCache.Entry> eldest) {
+                return size() > CAPACITY;
+            }
+        };
+    }
+
+    /**
+     * Looks an individual up. On a hit its fitness columns are filled with the cached (mean) fitness.
+     * @param population    Population the individual belongs to
+     * @param individual    Index of individual
+     * @return              True if the individual does not need a trial
+     */
+    public boolean lookup(Population population, int individual) {
+        probe.set(population.getGenes(), population.offset(individual), population.getGenesNo(), context);
+        Entry entry = entries.get(probe);
+        if (entry == null || entry.samples < SAMPLES) {
+            misses++;
+            return false;
+        }
+        hits++;
+        for (int k = 0; k < objectivesNo; k++) population.setObjective(k, individual, entry.sum[k] / entry.samples);
+        return true;
+    }
+
+    /**
+     * Adds the fitness an individual has just scored in a complete trial to the cache. Fitness extrapolated from a
+     * trial abandoned by racing must not be recorded: it depends on the cutoffs of the generation it was run in.
+     * @param population    Population the individual belongs to; its fitness columns hold the raw trial fitness
+     * @param individual    Index of individual
+     */
+    public void record(Population population, int individual) {
+        probe.set(population.getGenes(), population.offset(individual), population.getGenesNo(), context);
+        Entry entry = entries.get(probe);
+        if (entry == null) {
+            entry = new Entry(objectivesNo);
+            entries.put(probe.copy(), entry);
+        }
+        if (entry.samples >= SAMPLES) return;
+        for (int k = 0; k < objectivesNo; k++) entry.sum[k] += population.getObjective(k, individual);
+        entry.samples++;
+    }
+
+    /**
+     * Sets identity of the conditions fitness is measured in. Entries recorded in another context are never served
+     * and age out of the cache.
+     * @param context   E.g. hash of world file and game constants
+     */
+    public void setContext(long context) {
+        this.context = context;
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public int getSize() {
+        return entries.size();
+    }
+
+    public int getCapacity() {
+        return CAPACITY;
+    }
+
+    /**
+     * Genome and context. A probe points into the population's genes, stored keys own a copy.
+     */
+    private static class Key {
+        float[] genes;
+        int offset;
+        int length;
+        long context;
+        int hash;
+
+        void set(float[] genes, int offset, int length, long context) {
+            this.genes = genes;
+            this.offset = offset;
+            this.length = length;
+            this.context = context;
+            long h = context * 0x9E3779B97F4A7C15L;
+            for (int i = 0; i < length; i++) {
+                h = (h ^ Float.floatToIntBits(genes[offset + i])) * 0x100000001B3L;
+            }
+            this.hash = (int) (h ^ (h >>> 32));
+        }
+
+        Key copy() {
+            Key key = new Key();
+            key.genes = new float[length];
+            System.arraycopy(genes, offset, key.genes, 0, length);
+            key.length = length;
+            key.context = context;
+            key.hash = hash;
+            return key;
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            if (other.hash != hash || other.context != context || other.length != length) return false;
+            for (int i = 0; i < length; i++) {
+                // Bitwise comparison, consistent with the hash
+                if (Float.floatToIntBits(genes[offset + i]) != Float.floatToIntBits(other.genes[other.offset + i]))
+                    return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Fitness samples of one genome
+     */
+    private static class Entry {
+        double[] sum;                       // Sum of samples on each game
+        int samples;
+
+        Entry(int objectivesNo) {
+            sum = new double[objectivesNo];
+        }
+    }
+}
@@ -0,0 +1,333 @@
+package evolution;
+
+import utils.AsyncLog;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Append-only binary archive of every individual of every generation, kept in two files:
+ *   name.bin   32 byte header (magic, version, genesNo, objectivesNo) followed by fixed-stride records
+ *              generation, individual, id, parent id, second parent id (ints), summed fitness, fitness on every
+ *              game (doubles), genes (floats)
+ *   name.idx   one 32 byte entry per generation
+ *              generation, number of records (ints), first record, record of absolute best so far (longs),
+ *              fitness of absolute best so far (double)
+ * The parent is the one that gave more genes; the second parent is -1 unless the individual was crossed over.
+ * Fitness is stored as the engine leaves it after computing statistics, i.e. normalised.
+ * A writer is created by create(); a reader by open(), which maps both files into memory, so any generation or the
+ * absolute best is read with a few absolute gets instead of parsing text.
+ * A writer given an AsyncLog only fills a buffer with the records of a generation on the caller's thread; files are
+ * opened, written and closed by the log's writer thread. Two buffers are used in turn, so append() waits only if
+ * the writer is still busy with the generation before last.
+ */
+public class GenomeArchive {
+
+    private static final int MAGIC = 0x47454E4F;        // "GENO"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 32;
+    private static final int ENTRY_SIZE = 32;
+
+    private int genesNo;
+    private int objectivesNo;
+    private int stride;                                 // Bytes of one record
+    private RandomAccessFile dataFile, indexFile;
+    private FileChannel data, index;
+
+    // Writer
+    private AsyncLog writer;                            // Writes blocks in the background, null to write on the caller
+    private Block[] blocks = {new Block(), new Block()};
+    private int nextBlock;
+    private long records;
+    private long absBestRecord = -1;
+    private double absBestFitness = Double.NEGATIVE_INFINITY;
+
+    // Reader
+    private MappedByteBuffer dataMap;                   // Whole data file, null if it is too large for one mapping
+    private MappedByteBuffer indexMap;
+    private int generations;
+
+    private GenomeArchive(int genesNo, int objectivesNo) {
+        this.genesNo = genesNo;
+        this.objectivesNo = objectivesNo;
+        stride = 20 + 8 + 8 * objectivesNo + 4 * genesNo;
+    }
+
+    /**
+     * Records of one generation and its index entry
+     */
+    private class Block implements Runnable {
+        private ByteBuffer records;
+        private ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+        private boolean busy;                           // Queued or being written
+
+        public void run() {
+            try {
+                if (data == null) return;               // Archive could not be created
+                write(data, records);
+                write(index, entry);
+            } catch (IOException e) {
+                System.err.println("Cannot write genome archive: " + e.getMessage());
+            } finally {
+                release(this);
+            }
+        }
+    }
+
+    /**
+     * Creates an empty archive, overwriting an existing one
+     * @param name          Path of the archive without extension
+     * @param genesNo       Number of genes of a genome
+     * @param objectivesNo  Number of games
+     */
+    public static GenomeArchive create(String name, int genesNo, int objectivesNo) throws IOException {
+        GenomeArchive archive = new GenomeArchive(genesNo, objectivesNo);
+        archive.createFiles(name);
+        return archive;
+    }
+
+    /**
+     * Creates an empty archive written by the writer thread of a log. Errors are reported on standard error.
+     * @param name          Path of the archive without extension
+     * @param genesNo       Number of genes of a genome
+     * @param objectivesNo  Number of games
+     * @param writer        Log whose writer thread creates and writes the files
+     */
+    public static GenomeArchive create(final String name, int genesNo, int objectivesNo, AsyncLog writer) {
+        final GenomeArchive archive = new GenomeArchive(genesNo, objectivesNo);
+        archive.writer = writer;
+        writer.submit(new Runnable() {
+            public void run() {
+                try {
+                    archive.createFiles(name);
+                } catch (IOException e) {
+                    System.err.println("Cannot create genome archive " + name + ": " + e.getMessage());
+                }
+            }
+        });
+        return archive;
+    }
+
+    private void createFiles(String name) throws IOException {
+        dataFile = new RandomAccessFile(name + ".bin", "rw");
+        indexFile = new RandomAccessFile(name + ".idx", "rw");
+        dataFile.setLength(0);
+        indexFile.setLength(0);
+        index = indexFile.getChannel();
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putInt(genesNo).putInt(objectivesNo);
+        header.clear();
+        write(dataFile.getChannel(), header);
+        data = dataFile.getChannel();
+    }
+
+    /**
+     * Opens an archive for reading
+     * @param name  Path of the archive without extension
+     */
+    public static GenomeArchive open(String name) throws IOException {
+        RandomAccessFile dataFile = new RandomAccessFile(name + ".bin", "r");
+        FileChannel data = dataFile.getChannel();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining()) {
+            if (data.read(header, header.position()) < 0) break;
+        }
+        if (header.position() < HEADER_SIZE || header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+            dataFile.close();
+            throw new IOException(name + ".bin is not a genome archive of version " + VERSION);
+        }
+
+        GenomeArchive archive = new GenomeArchive(header.getInt(8), header.getInt(12));
+        archive.dataFile = dataFile;
+        archive.data = data;
+        archive.indexFile = new RandomAccessFile(name + ".idx", "r");
+        archive.index = archive.indexFile.getChannel();
+        archive.generations = (int) (archive.index.size() / ENTRY_SIZE);
+        archive.indexMap = archive.index.map(FileChannel.MapMode.READ_ONLY, 0, (long) archive.generations * ENTRY_SIZE);
+        if (data.size() <= Integer.MAX_VALUE) archive.dataMap = data.map(FileChannel.MapMode.READ_ONLY, 0, data.size());
+        return archive;
+    }
+
+    /**
+     * Appends every individual of an evaluated generation
+     * @param population    Population with fitness of current generation
+     * @param generation    Number of generation
+     */
+    public void append(Population population, int generation) throws IOException {
+        int i, k, n = population.getSize();
+        Block block = acquire();
+        if (block.records == null || block.records.capacity() < n * stride) block.records = ByteBuffer.allocate(n * stride);
+        ByteBuffer buffer = block.records;
+        buffer.clear();
+        float[] genes = population.getGenes();
+        long first = records;
+        for (i = 0; i < n; i++) {
+            buffer.putInt(generation).putInt(i).putInt(population.getId(i)).putInt(population.getParent(i))
+                    .putInt(population.getSecondParent(i));
+            buffer.putDouble(population.getFitness(i));
+            for (k = 0; k < objectivesNo; k++) buffer.putDouble(population.getObjective(k, i));
+            buffer.asFloatBuffer().put(genes, population.offset(i), genesNo);
+            buffer.position(buffer.position() + 4 * genesNo);
+            if (population.getFitness(i) > absBestFitness) {
+                absBestFitness = population.getFitness(i);
+                absBestRecord = records + i;
+            }
+        }
+        buffer.flip();
+        records += n;
+
+        ByteBuffer entry = block.entry;
+        entry.clear();
+        entry.putInt(generation).putInt(n).putLong(first).putLong(absBestRecord).putDouble(absBestFitness);
+        entry.flip();
+        generations++;
+        if (writer != null) {
+            writer.submit(block);
+        } else {
+            write(data, buffer);
+            write(index, entry);
+            release(block);
+        }
+    }
+
+    /**
+     * @return  Next block, once the writer has finished with it
+     */
+    private synchronized Block acquire() {
+        Block block = blocks[nextBlock];
+        nextBlock = (nextBlock + 1) % blocks.length;
+        while (block.busy) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        block.busy = true;
+        return block;
+    }
+
+    private synchronized void release(Block block) {
+        block.busy = false;
+        notifyAll();
+    }
+
+    private void write(FileChannel channel, ByteBuffer src) throws IOException {
+        while (src.hasRemaining()) channel.write(src);
+    }
+
+    /**
+     * @param position  Position in data file
+     * @param length    Number of bytes needed
+     * @return          Buffer whose first byte is the byte at position
+     */
+    private ByteBuffer region(long position, int length) throws IOException {
+        if (dataMap == null) return data.map(FileChannel.MapMode.READ_ONLY, position, length);
+        ByteBuffer region = dataMap.duplicate();
+        region.position((int) position);
+        return region.slice();
+    }
+
+    /**
+     * Copies an archived individual into a row of a population
+     * @param record        Number of record
+     * @param dst           Population the individual is written to
+     * @param individual    Index of row in dst
+     */
+    public void readIndividual(long record, Population dst, int individual) throws IOException {
+        ByteBuffer r = region(HEADER_SIZE + record * stride, stride);
+        dst.setId(individual, r.getInt(8));
+        dst.setParent(individual, r.getInt(12));
+        dst.setSecondParent(individual, r.getInt(16));
+        dst.setFitness(individual, r.getDouble(20));
+        for (int k = 0; k < objectivesNo && k < dst.getObjectivesNo(); k++) {
+            dst.setObjective(k, individual, r.getDouble(28 + 8 * k));
+        }
+        r.position(28 + 8 * objectivesNo);
+        r.asFloatBuffer().get(dst.getGenes(), dst.offset(individual), genesNo);
+    }
+
+    /**
+     * Copies an archived generation into a population
+     * @param generation    Index of generation in archive
+     * @param dst           Population to fill, at least as large as the generation
+     * @return              Number of individuals read
+     */
+    public int readGeneration(int generation, Population dst) throws IOException {
+        int n = Math.min(getCount(generation), dst.getSize());
+        long first = getFirstRecord(generation);
+        for (int i = 0; i < n; i++) readIndividual(first + i, dst, i);
+        return n;
+    }
+
+    /**
+     * @return  Record of the individual with the highest fitness in the whole archive, -1 if it is empty
+     */
+    public long getAbsBestRecord() {
+        return generations == 0 ? -1 : indexMap.getLong((generations - 1) * ENTRY_SIZE + 16);
+    }
+
+    /**
+     * @return  Fitness of the best individual in the whole archive
+     */
+    public double getAbsBestFitness() {
+        return generations == 0 ? Double.NEGATIVE_INFINITY : indexMap.getDouble((generations - 1) * ENTRY_SIZE + 24);
+    }
+
+    /**
+     * @param record    Number of record
+     * @return          Generation the record belongs to
+     */
+    public int getGeneration(long record) throws IOException {
+        return region(HEADER_SIZE + record * stride, stride).getInt(0);
+    }
+
+    public int getCount(int generation) {
+        return indexMap.getInt(generation * ENTRY_SIZE + 4);
+    }
+
+    public long getFirstRecord(int generation) {
+        return indexMap.getLong(generation * ENTRY_SIZE + 8);
+    }
+
+    public int getGenerations() {
+        return generations;
+    }
+
+    public int getGenesNo() {
+        return genesNo;
+    }
+
+    public int getObjectivesNo() {
+        return objectivesNo;
+    }
+
+    /**
+     * Closes the files, after every generation appended so far if they are written by a log's writer thread
+     */
+    public void close() throws IOException {
+        if (writer == null) {
+            closeFiles();
+            return;
+        }
+        writer.submit(new Runnable() {
+            public void run() {
+                try {
+                    closeFiles();
+                } catch (IOException e) {
+                    System.err.println("Cannot close genome archive: " + e.getMessage());
+                }
+            }
+        });
+    }
+
+    private void closeFiles() throws IOException {
+        if (dataFile != null) dataFile.close();
+        if (indexFile != null) indexFile.close();
+    }
+}
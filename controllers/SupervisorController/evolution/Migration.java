@@ -0,0 +1,244 @@
+package evolution;
+
+import utils.Metrics;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Island model: migration of the best individuals between evolutions that run in separate processes, on one machine
+ * or on several sharing a directory. Every MIGRATION_INTERVAL generations an island writes its best individuals into
+ * the directory and takes in the newest emigrants of the islands it is connected to, either in a ring (from island
+ * - 1) or fully connected (from every other island). No island ever waits for another: one that is slower, not
+ * started yet or crashed simply has nothing new to offer.
+ * Emigrants of island i at generation g are one file, island-i-g.bin, renamed into place once it is complete:
+ *   header    magic, version, island, generation, count, genesNo, objectivesNo (ints)
+ *   records   id (int), raw summed fitness, raw fitness on every game (doubles), genes (floats, in the order of
+ *             NeuralNetwork.getWeights())
+ * Only the newest file of every island is kept. Every run should start with an empty directory.
+ */
+public class Migration {
+
+    // Topologies
+    public static final int RING = 0;
+    public static final int FULLY_CONNECTED = 1;
+
+    private static final int MAGIC = 0x4D494752;        // "MIGR"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 28;
+
+    private static final Metrics.Counter SENT = Metrics.counter("migration.sent");
+    private static final Metrics.Counter RECEIVED = Metrics.counter("migration.received");
+
+    private File directory;
+    private int island;
+    private int islands;
+    private int topology;
+    private int MIGRATION_SIZE;
+    private int MIGRATION_INTERVAL;
+    private int[] sources;                              // Islands emigrants are taken in from
+    private int[] received;                             // Generation of the newest emigrants taken from every source
+    private File lastSent;
+
+    /**
+     * @param directory             Directory shared by all islands
+     * @param island                Index of this island, 0 .. islands - 1
+     * @param islands               Number of islands
+     * @param topology              RING or FULLY_CONNECTED
+     * @param MIGRATION_SIZE        Number of individuals sent at every migration
+     * @param MIGRATION_INTERVAL    Generations between migrations
+     */
+    public Migration(String directory, int island, int islands, int topology, int MIGRATION_SIZE,
+                     int MIGRATION_INTERVAL) {
+        int i, s = 0;
+        this.directory = new File(directory);
+        this.island = island;
+        this.islands = islands;
+        this.topology = topology;
+        this.MIGRATION_SIZE = MIGRATION_SIZE;
+        this.MIGRATION_INTERVAL = MIGRATION_INTERVAL;
+
+        if (islands < 2) {
+            sources = new int[0];
+        } else if (topology == RING) {
+            sources = new int[] {(island + islands - 1) % islands};
+        } else {
+            sources = new int[islands - 1];
+            for (i = 0; i < islands; i++) {
+                if (i != island) sources[s++] = i;
+            }
+        }
+        received = new int[islands];
+        for (i = 0; i < islands; i++) received[i] = -1;
+
+        this.directory.mkdirs();
+        for (File file : files(island)) file.delete();      // Left over from an earlier run
+    }
+
+    /**
+     * @param generation    Generation that has just been evaluated
+     * @return              True if the island migrates after this generation
+     */
+    public boolean isDue(int generation) {
+        return islands > 1 && (generation + 1) % MIGRATION_INTERVAL == 0;
+    }
+
+    /**
+     * Writes emigrants into the shared directory and deletes the ones sent before
+     * @param emigrants     Individuals to send, with raw fitness in their fitness columns
+     * @param generation    Current generation
+     */
+    public void send(Population emigrants, int generation) {
+        int i, k;
+        int genesNo = emigrants.getGenesNo(), objectivesNo = emigrants.getObjectivesNo();
+        int count = emigrants.getSize();
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + count * (4 + 8 + 8 * objectivesNo + 4 * genesNo));
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(island).putInt(generation).putInt(count).putInt(genesNo)
+                .putInt(objectivesNo);
+        float[] genes = emigrants.getGenes();
+        for (i = 0; i < count; i++) {
+            buffer.putInt(emigrants.getId(i));
+            buffer.putDouble(emigrants.getFitness(i));
+            for (k = 0; k < objectivesNo; k++) buffer.putDouble(emigrants.getObjective(k, i));
+            for (k = 0; k < genesNo; k++) buffer.putFloat(genes[emigrants.offset(i) + k]);
+        }
+
+        File file = new File(directory, "island-" + island + "-" + generation + ".bin");
+        File temp = new File(directory, ".island-" + island + "-" + generation + ".tmp");
+        try {
+            Files.write(temp.toPath(), buffer.array());
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Cannot send emigrants of generation " + generation + ": " + e.getMessage());
+            temp.delete();
+            return;
+        }
+        if (lastSent != null) lastSent.delete();
+        lastSent = file;
+        SENT.add(count);
+    }
+
+    /**
+     * Reads the newest emigrants of every source island that have not been taken in yet
+     * @param immigrants    Receives individuals with the fitness they scored on their island; its size is the most
+     *                      that are read
+     * @return              Number of individuals read
+     */
+    public int receive(Population immigrants) {
+        int n = 0;
+        for (int source : sources) {
+            if (n == immigrants.getSize()) break;
+            File newest = null;
+            int newestGeneration = received[source];
+            for (File file : files(source)) {
+                int generation = generationOf(file);
+                if (generation > newestGeneration) {
+                    newest = file;
+                    newestGeneration = generation;
+                }
+            }
+            if (newest == null) continue;
+            try {
+                n = read(newest, immigrants, n);
+                received[source] = newestGeneration;
+            } catch (IOException e) {
+                // Deleted by its island since it was listed; the next one will be read
+                System.err.println("Cannot read emigrants " + newest + ": " + e.getMessage());
+            }
+        }
+        RECEIVED.add(n);
+        return n;
+    }
+
+    /**
+     * Appends individuals of a file to immigrants
+     * @param file          File of emigrants
+     * @param immigrants    Population receiving individuals
+     * @param n             Index of first free individual in immigrants
+     * @return              Index of first free individual after reading
+     */
+    private int read(File file, Population immigrants, int n) throws IOException {
+        int i, k;
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        int genesNo = immigrants.getGenesNo(), objectivesNo = immigrants.getObjectivesNo();
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            throw new IOException("not a file of emigrants");
+        }
+        buffer.getInt();                                    // Island
+        buffer.getInt();                                    // Generation
+        int count = buffer.getInt();
+        if (buffer.getInt() != genesNo || buffer.getInt() != objectivesNo) {
+            throw new IOException("genomes of another size");
+        }
+        float[] genes = immigrants.getGenes();
+        for (i = 0; i < count && n < immigrants.getSize(); i++, n++) {
+            immigrants.setId(n, buffer.getInt());
+            immigrants.setFitness(n, buffer.getDouble());
+            for (k = 0; k < objectivesNo; k++) immigrants.setObjective(k, n, buffer.getDouble());
+            for (k = 0; k < genesNo; k++) genes[immigrants.offset(n) + k] = buffer.getFloat();
+        }
+        return n;
+    }
+
+    /**
+     * @param source    Index of island
+     * @return          Files of emigrants of an island
+     */
+    private File[] files(int source) {
+        final String prefix = "island-" + source + "-";
+        File[] files = directory.listFiles(new FilenameFilter() {
+            public boolean accept(File dir, String name) {
+                return name.startsWith(prefix) && name.endsWith(".bin");
+            }
+        });
+        return files == null ? new File[0] : files;
+    }
+
+    /**
+     * @return  Generation in the name of a file of emigrants
+     */
+    private static int generationOf(File file) {
+        String name = file.getName();
+        return Integer.parseInt(name.substring(name.lastIndexOf('-') + 1, name.length() - 4));
+    }
+
+    public int getIsland() {
+        return island;
+    }
+
+    public int getIslands() {
+        return islands;
+    }
+
+    public int getTopology() {
+        return topology;
+    }
+
+    /**
+     * @return  Number of individuals sent at every migration
+     */
+    public int getSize() {
+        return MIGRATION_SIZE;
+    }
+
+    /**
+     * @return  Number of islands emigrants are taken in from
+     */
+    public int getSources() {
+        return sources.length;
+    }
+
+    /**
+     * @param name  RING or FULLY_CONNECTED, in any case
+     * @return      Topology of that name, RING if the name is unknown
+     */
+    public static int topologyOf(String name) {
+        if (name.equalsIgnoreCase("FULLY_CONNECTED")) return FULLY_CONNECTED;
+        if (!name.equalsIgnoreCase("RING")) System.err.println("Unknown topology " + name + ", using RING");
+        return RING;
+    }
+}
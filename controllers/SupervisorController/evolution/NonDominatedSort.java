@@ -0,0 +1,152 @@
+package evolution;
+
+import utils.Ranking;
+
+/**
+ * Pareto fronts and crowding distances of a set of individuals, all objectives maximised. Fronts are found with
+ * Efficient Non-dominated Sort, sequential search (Zhang et al. 2015): individuals are sorted lexicographically by
+ * their objectives, best first, so that none can be dominated by one that comes after it; each one is then put into
+ * the first front none of whose members dominates it, comparing with the members added to a front last first.
+ * That needs O(M N sqrt(N)) comparisons on average instead of the O(M N^2) of the original NSGA-II sort.
+ * All arrays are allocated once for the largest set.
+ */
+public class NonDominatedSort {
+
+    private int capacity;
+    private int[] order;                    // Individuals in lexicographic order
+    private int[] scratch;
+    private int[] front;                    // Front of every individual, 0 is the non-dominated one
+    private int[] previous;                 // Member added to the same front before an individual, -1 for the first
+    private int[] last;                     // Member added to every front last
+    private int[] members;                  // Members of every front one after another, see getFrontStart()
+    private int[] frontStart;
+    private int fronts;
+    private double[] crowding;
+
+    /**
+     * @param capacity  Largest number of individuals sorted at once
+     */
+    public NonDominatedSort(int capacity) {
+        this.capacity = capacity;
+        order = new int[capacity];
+        scratch = new int[capacity];
+        front = new int[capacity];
+        previous = new int[capacity];
+        last = new int[capacity];
+        members = new int[capacity];
+        frontStart = new int[capacity + 1];
+        crowding = new double[capacity];
+    }
+
+    /**
+     * Sorts individuals 0..n-1 into fronts and computes their crowding distances
+     * @param objectives    Fitness columns, [objective][individual]
+     * @param n             Number of individuals, at most capacity
+     * @return              Number of fronts
+     */
+    public int sort(double[][] objectives, int n) {
+        int i, k;
+        if (n > capacity) throw new IllegalArgumentException(n + " individuals, capacity is " + capacity);
+        int m = objectives.length;
+
+        // Lexicographic order, best first: stable sorts by every objective, last one first
+        Ranking.identity(order, n);
+        for (k = m - 1; k >= 0; k--) Ranking.sort(objectives[k], order, scratch, n);
+
+        fronts = 0;
+        for (i = 0; i < n; i++) {
+            int s = order[i];
+            int f = 0;
+            while (f < fronts && dominatedByFront(objectives, s, f)) f++;
+            if (f == fronts) {
+                last[f] = -1;
+                fronts++;
+            }
+            front[s] = f;
+            previous[s] = last[f];
+            last[f] = s;
+        }
+
+        // Members of every front in one array, in lexicographic order
+        for (i = 0; i <= fronts; i++) frontStart[i] = 0;
+        for (i = 0; i < n; i++) frontStart[front[i] + 1]++;
+        for (i = 0; i < fronts; i++) frontStart[i + 1] += frontStart[i];
+        for (i = 0; i < fronts; i++) last[i] = frontStart[i];
+        for (i = 0; i < n; i++) {
+            int s = order[i];
+            members[last[front[s]]++] = s;
+        }
+
+        for (i = 0; i < fronts; i++) crowdingDistance(objectives, frontStart[i], frontStart[i + 1]);
+        return fronts;
+    }
+
+    /**
+     * @return  True if a member of front f dominates individual s
+     */
+    private boolean dominatedByFront(double[][] objectives, int s, int f) {
+        for (int t = last[f]; t >= 0; t = previous[t]) {
+            if (dominates(objectives, t, s)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return  True if a is at least as good as b on every objective and better on one
+     */
+    public static boolean dominates(double[][] objectives, int a, int b) {
+        boolean better = false;
+        for (int k = 0; k < objectives.length; k++) {
+            if (objectives[k][a] < objectives[k][b]) return false;
+            if (objectives[k][a] > objectives[k][b]) better = true;
+        }
+        return better;
+    }
+
+    /**
+     * Crowding distance of members[from ... to - 1]: sum over objectives of the normalised distance between the
+     * neighbours of a member; members at either end of an objective get infinity
+     */
+    private void crowdingDistance(double[][] objectives, int from, int to) {
+        int i, k, n = to - from;
+        for (i = from; i < to; i++) crowding[members[i]] = 0;
+        if (n < 3) {
+            for (i = from; i < to; i++) crowding[members[i]] = Double.POSITIVE_INFINITY;
+            return;
+        }
+        for (k = 0; k < objectives.length; k++) {
+            double[] f = objectives[k];
+            System.arraycopy(members, from, order, 0, n);
+            Ranking.sort(f, order, scratch, n);
+            double range = f[order[0]] - f[order[n - 1]];
+            crowding[order[0]] = Double.POSITIVE_INFINITY;
+            crowding[order[n - 1]] = Double.POSITIVE_INFINITY;
+            if (range <= 0) continue;
+            for (i = 1; i < n - 1; i++) crowding[order[i]] += (f[order[i - 1]] - f[order[i + 1]]) / range;
+        }
+    }
+
+    public int getFronts() {
+        return fronts;
+    }
+
+    /**
+     * @param f     Front
+     * @return      Position of the first member of front f in getMembers(); front f ends where front f + 1 starts
+     */
+    public int getFrontStart(int f) {
+        return frontStart[f];
+    }
+
+    public int[] getMembers() {
+        return members;
+    }
+
+    public int[] getFront() {
+        return front;
+    }
+
+    public double[] getCrowding() {
+        return crowding;
+    }
+}
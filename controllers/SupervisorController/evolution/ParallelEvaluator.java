@@ -0,0 +1,166 @@
+package evolution;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Evaluates all individuals of a generation on a pool of independent evaluators, one per worker. Workers take the
+ * next unevaluated individual from a shared counter, so evaluators of uneven speed stay busy until the generation
+ * is done, and write the results straight into the population's fitness columns. Every individual's column entries
+ * are written by exactly one worker, so no locking is needed.
+ * In steady state (evolve()) there is no generation to finish: every worker evaluates offspring in its own slot of a
+ * population of pending genomes and asks the engine for the next one as soon as it has reported a trial.
+ * By default one platform thread is started per worker, which suits CPU-bound evaluators such as a local
+ * simulator. I/O-bound evaluators can be given any other executor, e.g. one starting a virtual thread per task.
+ */
+public class ParallelEvaluator {
+
+    private int workers;
+    private Evaluator[] evaluators;
+    private double[][] trialFitness;                // Fitness of current trial of each worker
+    private ExecutorService executor;
+    private boolean ownExecutor;
+    private Future<?>[] futures;
+    private AtomicInteger next = new AtomicInteger();
+    private Population population;                  // Population being evaluated, pending genomes in steady state
+    private EvolutionEngine engine;                 // Engine breeding offspring in steady state, null otherwise
+    private int evaluations;                        // Evaluations of a steady state run
+
+    /**
+     * Creates a pool with one thread per worker
+     * @param factory   Factory creating one evaluator for each worker
+     * @param workers   Number of workers, usually number of available cores
+     */
+    public ParallelEvaluator(EvaluatorFactory factory, int workers) {
+        this(factory, workers, Executors.newFixedThreadPool(workers, new ThreadFactory() {
+            private AtomicInteger counter = new AtomicInteger();
+
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "evaluator-" + counter.getAndIncrement());
+                t.setDaemon(true);
+                return t;
+            }
+        }));
+        ownExecutor = true;
+    }
+
+    /**
+     * Runs workers on given executor
+     * @param factory   Factory creating one evaluator for each worker
+     * @param workers   Number of workers
+     * @param executor  Executor the workers are submitted to; it is not shut down by this class
+     */
+    public ParallelEvaluator(EvaluatorFactory factory, int workers, ExecutorService executor) {
+        this.workers = workers;
+        this.executor = executor;
+        this.evaluators = new Evaluator[workers];
+        this.futures = new Future<?>[workers];
+        for (int w = 0; w < workers; w++) evaluators[w] = factory.create(w);
+    }
+
+    /**
+     * Evaluates every individual of the population and blocks until all trials are finished
+     * @param population    Population to evaluate; raw fitness is written into its fitness columns
+     */
+    public void evaluate(Population population) {
+        this.population = population;
+        this.engine = null;
+        runWorkers();
+    }
+
+    /**
+     * Runs a steady state evolution and blocks until all evaluations are reported to the engine
+     * @param engine        Engine that breeds offspring and takes them into its population
+     * @param evaluations   Number of trials to run
+     */
+    public void evolve(EvolutionEngine engine, int evaluations) {
+        Population current = engine.getPopulation();
+        if (population == null || population.getSize() != workers || population.getGenesNo() != current.getGenesNo()
+                || population.getObjectivesNo() != current.getObjectivesNo()) {
+            population = new Population(workers, current.getGenesNo(), current.getObjectivesNo());
+        }
+        this.engine = engine;
+        this.evaluations = evaluations;
+        runWorkers();
+        this.engine = null;
+    }
+
+    /**
+     * Starts every worker on population and waits for all of them to finish
+     */
+    private void runWorkers() {
+        int w;
+        if (trialFitness == null || trialFitness[0].length != population.getObjectivesNo()) {
+            trialFitness = new double[workers][population.getObjectivesNo()];
+        }
+        next.set(0);
+
+        for (w = 0; w < workers; w++) {
+            final int worker = w;
+            futures[w] = executor.submit(new Runnable() {
+                public void run() {
+                    work(worker);
+                }
+            });
+        }
+        try {
+            for (w = 0; w < workers; w++) futures[w].get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for evaluation", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Evaluation failed: " + e.getCause(), e.getCause());
+        }
+    }
+
+    /**
+     * Evaluates individuals until there are none left
+     * @param worker    Index of worker
+     */
+    private void work(int worker) {
+        if (engine != null) {
+            evolve(worker);
+            return;
+        }
+        Evaluator evaluator = evaluators[worker];
+        double[] fitness = trialFitness[worker];
+        double[][] objectives = population.getObjectives();
+        int size = population.getSize();
+        int i;
+        while ((i = next.getAndIncrement()) < size) {
+            evaluator.evaluate(population, i, fitness);
+            for (int k = 0; k < fitness.length; k++) objectives[k][i] = fitness[k];
+        }
+    }
+
+    /**
+     * Breeds, evaluates and reports offspring in the worker's slot of pending genomes until all evaluations of the
+     * steady state run have been handed out
+     * @param worker    Index of worker, and of its slot
+     */
+    private void evolve(int worker) {
+        Evaluator evaluator = evaluators[worker];
+        double[] fitness = trialFitness[worker];
+        while (next.getAndIncrement() < evaluations) {
+            engine.nextOffspring(population, worker);
+            evaluator.evaluate(population, worker, fitness);
+            for (int k = 0; k < fitness.length; k++) population.setObjective(k, worker, fitness[k]);
+            engine.offspringEvaluated(population, worker);
+        }
+    }
+
+    /**
+     * Stops worker threads if they were started by this evaluator
+     */
+    public void shutdown() {
+        if (ownExecutor) executor.shutdown();
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+}
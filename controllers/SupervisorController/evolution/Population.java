@@ -0,0 +1,258 @@
+package evolution;
+
+/**
+ * Structure-of-arrays store for a population of neural network genomes. All genomes live in one contiguous float
+ * array, individual i occupying genes[i * genesNo ... (i + 1) * genesNo - 1], with the summed fitness and the
+ * fitness on every game kept in columns alongside. Copying, crossing over and swapping individuals are block copies
+ * instead of per-gene calls on separate NeuralNetwork objects.
+ */
+public class Population {
+
+    private int size;
+    private int genesNo;
+    private int objectivesNo;
+    private float[] genes;                  // Genomes, one row of genesNo weights per individual
+    private double[] fitness;               // Summed fitness of every individual
+    private double[][] objectives;          // Fitness of every individual on every game: [game][individual]
+    private long[] seeds;                   // Seed of the random stream of every individual's trial
+    private int[] ids;                      // Identifier of every genome, unique within an evolution
+    private int[] parents;                  // Identifier of the genome each one was bred from, -1 if none
+    private int[] secondParents;            // Identifier of the other parent of crossover offspring, -1 if none
+    private float[] scratch;                // Row buffer used when swapping individuals
+
+    public Population(int size, int genesNo, int objectivesNo) {
+        this.size = size;
+        this.genesNo = genesNo;
+        this.objectivesNo = objectivesNo;
+        this.genes = new float[size * genesNo];
+        this.fitness = new double[size];
+        this.objectives = new double[objectivesNo][size];
+        this.seeds = new long[size];
+        this.ids = new int[size];
+        this.parents = new int[size];
+        this.secondParents = new int[size];
+        for (int i = 0; i < size; i++) secondParents[i] = -1;
+        this.scratch = new float[genesNo];
+    }
+
+    /**
+     * Index of the first gene of an individual in the genes array
+     * @param individual    Index of individual
+     * @return              Offset of individual's row
+     */
+    public int offset(int individual) {
+        return individual * genesNo;
+    }
+
+    public float getGene(int individual, int gene) {
+        return genes[individual * genesNo + gene];
+    }
+
+    public void setGene(int individual, int gene, float value) {
+        genes[individual * genesNo + gene] = value;
+    }
+
+    /**
+     * Copies genome of an individual into given array
+     * @param individual    Index of individual
+     * @param dst           Array the genome is copied to
+     * @param dstOffset     Position of first gene in dst
+     */
+    public void readGenome(int individual, float[] dst, int dstOffset) {
+        System.arraycopy(genes, individual * genesNo, dst, dstOffset, genesNo);
+    }
+
+    /**
+     * Overwrites genome of an individual with the contents of given array
+     * @param individual    Index of individual
+     * @param src           Array holding the genome
+     * @param srcOffset     Position of first gene in src
+     */
+    public void writeGenome(int individual, float[] src, int srcOffset) {
+        System.arraycopy(src, srcOffset, genes, individual * genesNo, genesNo);
+    }
+
+    /**
+     * Copies genome of an individual from another (or the same) population
+     * @param src       Population the parent comes from
+     * @param parent    Index of parent in src
+     * @param child     Index of individual that is overwritten
+     */
+    public void copyGenome(Population src, int parent, int child) {
+        System.arraycopy(src.genes, parent * genesNo, genes, child * genesNo, genesNo);
+        parents[child] = src.ids[parent];
+        secondParents[child] = -1;
+    }
+
+    /**
+     * Copies an individual from another population together with its fitness scores, seed and identifiers
+     * @param src       Population the individual comes from
+     * @param from      Index of individual in src
+     * @param to        Index of individual that is overwritten
+     */
+    public void copyIndividual(Population src, int from, int to) {
+        System.arraycopy(src.genes, from * genesNo, genes, to * genesNo, genesNo);
+        fitness[to] = src.fitness[from];
+        for (int k = 0; k < objectivesNo; k++) objectives[k][to] = src.objectives[k][from];
+        seeds[to] = src.seeds[from];
+        ids[to] = src.ids[from];
+        parents[to] = src.parents[from];
+        secondParents[to] = src.secondParents[from];
+    }
+
+    /**
+     * One point crossover. Genes up to and including crossover point come from first parent, the rest from second.
+     * The parent that gives more genes is recorded as the parent of the offspring, the other one as its second parent.
+     * @param src               Population the parents come from
+     * @param ind1              Index of first parent
+     * @param ind2              Index of second parent
+     * @param crossoverPoint    Last gene taken from first parent
+     * @param child             Index of individual that receives the offspring
+     */
+    public void crossover(Population src, int ind1, int ind2, int crossoverPoint, int child) {
+        int head = Math.min(crossoverPoint + 1, genesNo);
+        System.arraycopy(src.genes, ind1 * genesNo, genes, child * genesNo, head);
+        System.arraycopy(src.genes, ind2 * genesNo + head, genes, child * genesNo + head, genesNo - head);
+        boolean first = 2 * head >= genesNo;
+        parents[child] = first ? src.ids[ind1] : src.ids[ind2];
+        secondParents[child] = first ? src.ids[ind2] : src.ids[ind1];
+    }
+
+    /**
+     * Swaps two individuals together with their fitness scores
+     * @param i     Index of first individual
+     * @param j     Index of second individual
+     */
+    public void swap(int i, int j) {
+        if (i == j) return;
+        System.arraycopy(genes, i * genesNo, scratch, 0, genesNo);
+        System.arraycopy(genes, j * genesNo, genes, i * genesNo, genesNo);
+        System.arraycopy(scratch, 0, genes, j * genesNo, genesNo);
+
+        double temp = fitness[i];
+        fitness[i] = fitness[j];
+        fitness[j] = temp;
+        for (int k = 0; k < objectivesNo; k++) {
+            temp = objectives[k][i];
+            objectives[k][i] = objectives[k][j];
+            objectives[k][j] = temp;
+        }
+        long seed = seeds[i];
+        seeds[i] = seeds[j];
+        seeds[j] = seed;
+        int id = ids[i];
+        ids[i] = ids[j];
+        ids[j] = id;
+        id = parents[i];
+        parents[i] = parents[j];
+        parents[j] = id;
+        id = secondParents[i];
+        secondParents[i] = secondParents[j];
+        secondParents[j] = id;
+    }
+
+    /**
+     * Sets summed fitness and fitness on every game of all individuals to given value
+     * @param value     Value fitness scores are reset to
+     */
+    public void resetFitness(double value) {
+        for (int i = 0; i < size; i++) fitness[i] = value;
+        for (int k = 0; k < objectivesNo; k++) {
+            for (int i = 0; i < size; i++) objectives[k][i] = value;
+        }
+    }
+
+    /* Getters and setters */
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getGenesNo() {
+        return genesNo;
+    }
+
+    public int getObjectivesNo() {
+        return objectivesNo;
+    }
+
+    public float[] getGenes() {
+        return genes;
+    }
+
+    public double[] getFitness() {
+        return fitness;
+    }
+
+    public double getFitness(int individual) {
+        return fitness[individual];
+    }
+
+    public void setFitness(int individual, double f) {
+        fitness[individual] = f;
+    }
+
+    public double[][] getObjectives() {
+        return objectives;
+    }
+
+    public double getObjective(int game, int individual) {
+        return objectives[game][individual];
+    }
+
+    public void setObjective(int game, int individual, double f) {
+        objectives[game][individual] = f;
+    }
+
+    /**
+     * Seed evaluators use for random numbers of an individual's trial (e.g. sensor noise), so that the trial does
+     * not depend on which worker runs it
+     * @param individual    Index of individual
+     * @return              Seed of individual's trial
+     */
+    public long getSeed(int individual) {
+        return seeds[individual];
+    }
+
+    public void setSeed(int individual, long seed) {
+        seeds[individual] = seed;
+    }
+
+    public int getId(int individual) {
+        return ids[individual];
+    }
+
+    public void setId(int individual, int id) {
+        ids[individual] = id;
+    }
+
+    /**
+     * @param individual    Index of individual
+     * @return              Identifier of the genome the individual was copied or crossed over from, -1 if random
+     */
+    public int getParent(int individual) {
+        return parents[individual];
+    }
+
+    /**
+     * Records the only parent of an individual; it has no second parent
+     * @param individual    Index of individual
+     * @param id            Identifier of parent, -1 if random
+     */
+    public void setParent(int individual, int id) {
+        parents[individual] = id;
+        secondParents[individual] = -1;
+    }
+
+    /**
+     * @param individual    Index of individual
+     * @return              Identifier of the parent that gave fewer genes to crossover offspring, -1 if not crossed over
+     */
+    public int getSecondParent(int individual) {
+        return secondParents[individual];
+    }
+
+    public void setSecondParent(int individual, int id) {
+        secondParents[individual] = id;
+    }
+}
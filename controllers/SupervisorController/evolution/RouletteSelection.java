@@ -0,0 +1,46 @@
+package evolution;
+
+import java.util.Random;
+
+/**
+ * Fitness proportional (roulette wheel) selection. A table of cumulative fitness is built once in prepare() and
+ * every draw is a binary search in it, O(log N) instead of scanning the whole population.
+ */
+public class RouletteSelection extends Selection {
+
+    protected double[] cumulative = new double[0];     // Cumulative fitness of candidates, minimum subtracted
+    protected double total;                            // Size of the wheel
+
+    public void prepare(double[] fitness, int first, int length) {
+        super.prepare(fitness, first, length);
+        if (cumulative.length < length) cumulative = new double[length];
+
+        double min = minimum();
+        double sum = 0;
+        for (int i = 0; i < length; i++) {
+            sum += fitness[first + i] - min;
+            cumulative[i] = sum;
+        }
+        total = sum;
+    }
+
+    public int select(Random random) {
+        if (total <= 0) return first + random.nextInt(length);     // All candidates are equal
+        return first + search(random.nextDouble() * total);
+    }
+
+    /**
+     * Finds the slot of the wheel a point falls into
+     * @param r     Point on the wheel in [0, total)
+     * @return      Index of first candidate whose cumulative fitness is greater than r
+     */
+    protected int search(double r) {
+        int low = 0, high = length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (cumulative[mid] > r) high = mid;
+            else low = mid + 1;
+        }
+        return low;
+    }
+}
@@ -0,0 +1,58 @@
+package evolution;
+
+import java.util.Random;
+
+/**
+ * Selection scheme that draws parents from a range of individuals according to their fitness. The scheme is
+ * prepared once per mating pool - building whatever table it samples from - and then draws any number of parents
+ * from it. Tables are reused between generations, so preparing and sampling do not allocate once they have grown to
+ * the size of the population.
+ */
+public abstract class Selection {
+
+    protected double[] fitness;         // Fitness column selection is prepared on
+    protected int first;                // Index of first candidate in population
+    protected int length;               // Number of candidates
+
+    /**
+     * Prepares selection among individuals first..first+length-1
+     * @param fitness   Fitness scores of the whole population
+     * @param first     Index of first candidate
+     * @param length    Number of candidates
+     */
+    public void prepare(double[] fitness, int first, int length) {
+        this.fitness = fitness;
+        this.first = first;
+        this.length = length;
+    }
+
+    /**
+     * Draws one parent
+     * @param random    Source of randomness
+     * @return          Index of selected individual in population
+     */
+    public abstract int select(Random random);
+
+    /**
+     * Fills a mating pool with parents
+     * @param pool      Receives indexes of selected individuals in population
+     * @param n         Number of parents to draw
+     * @param random    Source of randomness
+     */
+    public void fill(int[] pool, int n, Random random) {
+        for (int i = 0; i < n; i++) pool[i] = select(random);
+    }
+
+    /**
+     * Fitness subtracted from every candidate before fitness proportional selection, so that the worst candidate
+     * keeps a zero share of the wheel. Negative minimum is not subtracted.
+     * @return  Minimal fitness among candidates, or 0 if it is negative
+     */
+    protected double minimum() {
+        double min = fitness[first];
+        for (int i = 1; i < length; i++) {
+            if (fitness[first + i] < min) min = fitness[first + i];
+        }
+        return min < 0 ? 0 : min;
+    }
+}
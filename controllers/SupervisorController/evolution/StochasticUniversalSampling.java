@@ -0,0 +1,27 @@
+package evolution;
+
+import java.util.Random;
+
+/**
+ * Stochastic universal sampling (Baker, 1987). A mating pool is drawn with a single spin of a wheel with n evenly
+ * spaced pointers, so every candidate gets a number of copies within one of its expected share. A single draw is a
+ * plain roulette draw.
+ */
+public class StochasticUniversalSampling extends RouletteSelection {
+
+    public void fill(int[] pool, int n, Random random) {
+        int i;
+        if (total <= 0) {
+            for (i = 0; i < n; i++) pool[i] = first + random.nextInt(length);
+            return;
+        }
+        double step = total / n;
+        double pointer = random.nextDouble() * step;
+        int ind = 0;
+        for (i = 0; i < n; i++) {
+            while (cumulative[ind] <= pointer && ind < length - 1) ind++;
+            pool[i] = first + ind;
+            pointer += step;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package evolution;
+
+import java.util.Random;
+
+/**
+ * Tournament selection: the fittest of a few candidates drawn uniformly with replacement. Needs no table, is
+ * insensitive to the scale of fitness scores and its pressure is set by the size of the tournament.
+ */
+public class TournamentSelection extends Selection {
+
+    private int TOURNAMENT_SIZE;
+
+    /**
+     * @param TOURNAMENT_SIZE   Number of candidates competing in every tournament
+     */
+    public TournamentSelection(int TOURNAMENT_SIZE) {
+        this.TOURNAMENT_SIZE = TOURNAMENT_SIZE;
+    }
+
+    public int select(Random random) {
+        int best = first + random.nextInt(length);
+        for (int i = 1; i < TOURNAMENT_SIZE; i++) {
+            int candidate = first + random.nextInt(length);
+            if (fitness[candidate] > fitness[best]) best = candidate;
+        }
+        return best;
+    }
+
+    public int getTournamentSize() {
+        return TOURNAMENT_SIZE;
+    }
+}
@@ -79,6 +79,19 @@ public class NeuralNetwork {
      * @return                  Returns mutated gene
      */
     public float mutate(float GENE_MIN, float GENE_MAX, float gene, double MUTATION_SIGMA) {
+        return mutate(GENE_MIN, GENE_MAX, gene, MUTATION_SIGMA, random);
+    }
+
+    /**
+     * Method to mutate weights of the neural network with given source of randomness
+     * @param GENE_MIN          Minimal value of a gene (weight)
+     * @param GENE_MAX          Maximal value of a gene (weight)
+     * @param gene              Weight to be mutated
+     * @param MUTATION_SIGMA    Determines the extent to which a value will be mutated (how far from its current value)
+     * @param random            Source of randomness
+     * @return                  Returns mutated gene
+     */
+    public float mutate(float GENE_MIN, float GENE_MAX, float gene, double MUTATION_SIGMA, Random random) {
         float x1, x2, w, y1;
 
         do {
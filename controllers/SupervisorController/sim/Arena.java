@@ -0,0 +1,442 @@
+package sim;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.FileReader;
+import java.io.BufferedReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Two dimensional model of a Webots world, seen from above (x and z axes). Boxes from the bounding objects of all
+ * solids become obstacles, the textured plane of the GROUND solid becomes the floor seen by the floor sensors and the
+ * pose of the EPUCK node becomes the start pose of every trial.
+ * Only the subset of VRML used by e-puck worlds is understood: Solid, Transform, Group, Shape, Box, Plane and
+ * ImageTexture nodes, DEF/USE, and rotations around the vertical axis.
+ */
+public class Arena {
+
+    private double[] boxX = new double[0];          // Centre of each obstacle
+    private double[] boxZ = new double[0];
+    private double[] boxHalfX = new double[0];      // Half of obstacle's size along its own axes
+    private double[] boxHalfZ = new double[0];
+    private double[] boxCos = new double[0];        // Orientation of obstacle around vertical axis
+    private double[] boxSin = new double[0];
+    private int boxesNo;
+
+    private float[] floor;                          // Luminance of floor texture in [0,1], row by row
+    private int floorWidth, floorHeight;
+    private double floorX = 0.9, floorZ = 0.9;      // Size of the floor plane [m]
+
+    private double startX, startZ, startHeading;    // Pose of the e-puck at the beginning of each trial
+
+    /**
+     * Loads arena from a Webots world file. Floor texture is read relative to the world file.
+     * @param worldFile     Path to .wbt file
+     * @return              Arena described by the world
+     * @throws IOException  If world or its floor texture cannot be read
+     */
+    public static Arena load(String worldFile) throws IOException {
+        File file = new File(worldFile);
+        Reader reader = new BufferedReader(new FileReader(file));
+        List<VrmlNode> nodes;
+        try {
+            nodes = new VrmlParser(reader).parse();
+        } finally {
+            reader.close();
+        }
+
+        Arena arena = new Arena();
+        List<double[]> boxes = new ArrayList<double[]>();
+        for (VrmlNode node : nodes) {
+            if (node.type.equals("DifferentialWheels") && "EPUCK".equals(node.def)) {
+                double[] t = node.numbers("translation");
+                if (t != null) {
+                    arena.startX = t[0];
+                    arena.startZ = t[2];
+                }
+                arena.startHeading = yaw(node.numbers("rotation"));
+            } else if (node.type.equals("Solid")) {
+                double[] t = node.numbers("translation");
+                double x = t == null ? 0 : t[0], z = t == null ? 0 : t[2];
+                double heading = yaw(node.numbers("rotation"));
+                Object bounds = node.fields.get("boundingObject");
+                if (bounds != null) collectBoxes(bounds, x, z, heading, boxes);
+                if ("GROUND".equals(node.def)) arena.loadFloor(node, file.getParentFile());
+            }
+        }
+        arena.setBoxes(boxes);
+        return arena;
+    }
+
+    /**
+     * Walks a bounding object and adds every Box found to the list of obstacles, in world coordinates
+     */
+    private static void collectBoxes(Object value, double x, double z, double heading, List<double[]> boxes) {
+        if (value instanceof List) {
+            for (Object o : (List<?>) value) collectBoxes(o, x, z, heading, boxes);
+            return;
+        }
+        if (!(value instanceof VrmlNode)) return;
+        VrmlNode node = (VrmlNode) value;
+
+        if (node.type.equals("Box")) {
+            double[] size = node.numbers("size");
+            if (size != null) boxes.add(new double[]{x, z, size[0] / 2, size[2] / 2, heading});
+        } else if (node.type.equals("Shape")) {
+            collectBoxes(node.fields.get("geometry"), x, z, heading, boxes);
+        } else if (node.type.equals("Transform") || node.type.equals("Group")) {
+            double[] t = node.numbers("translation");
+            double cx = x, cz = z;
+            if (t != null) {
+                cx = x + t[0] * Math.cos(heading) + t[2] * Math.sin(heading);
+                cz = z - t[0] * Math.sin(heading) + t[2] * Math.cos(heading);
+            }
+            collectBoxes(node.fields.get("children"), cx, cz, heading + yaw(node.numbers("rotation")), boxes);
+        }
+    }
+
+    /**
+     * Rotation around the vertical axis. Rotations around other axes do not change the view from above.
+     * @param rotation  Axis-angle rotation (x, y, z, angle), may be null
+     * @return          Angle around y axis [rad]
+     */
+    private static double yaw(double[] rotation) {
+        if (rotation == null || rotation.length < 4) return 0;
+        if (rotation[1] >= 0.5) return rotation[3];
+        if (rotation[1] <= -0.5) return -rotation[3];
+        return 0;
+    }
+
+    private void setBoxes(List<double[]> boxes) {
+        boxesNo = boxes.size();
+        boxX = new double[boxesNo];
+        boxZ = new double[boxesNo];
+        boxHalfX = new double[boxesNo];
+        boxHalfZ = new double[boxesNo];
+        boxCos = new double[boxesNo];
+        boxSin = new double[boxesNo];
+        for (int i = 0; i < boxesNo; i++) {
+            double[] b = boxes.get(i);
+            boxX[i] = b[0];
+            boxZ[i] = b[1];
+            boxHalfX[i] = b[2];
+            boxHalfZ[i] = b[3];
+            boxCos[i] = Math.cos(b[4]);
+            boxSin[i] = Math.sin(b[4]);
+        }
+    }
+
+    /**
+     * Reads size of the ground plane and converts its texture into a luminance map
+     */
+    private void loadFloor(VrmlNode ground, File directory) throws IOException {
+        VrmlNode shape = ground.findChild("Shape");
+        if (shape == null) return;
+        Object geometry = shape.fields.get("geometry");
+        if (geometry instanceof VrmlNode) {
+            double[] size = ((VrmlNode) geometry).numbers("size");
+            if (size != null) {
+                floorX = size[0];
+                floorZ = size[1];
+            }
+        }
+        String url = null;
+        Object appearance = shape.fields.get("appearance");
+        if (appearance instanceof VrmlNode) {
+            Object texture = ((VrmlNode) appearance).fields.get("texture");
+            if (texture instanceof VrmlNode) url = ((VrmlNode) texture).string("url");
+        }
+        if (url == null) return;
+
+        BufferedImage image = ImageIO.read(new File(directory, url));
+        if (image == null) throw new IOException("Cannot decode floor texture " + url);
+        floorWidth = image.getWidth();
+        floorHeight = image.getHeight();
+        floor = new float[floorWidth * floorHeight];
+        for (int row = 0; row < floorHeight; row++) {
+            for (int col = 0; col < floorWidth; col++) {
+                int rgb = image.getRGB(col, row);
+                int r = (rgb >> 16) & 0xFF, g = (rgb >> 8) & 0xFF, b = rgb & 0xFF;
+                floor[row * floorWidth + col] = (float) ((0.299 * r + 0.587 * g + 0.114 * b) / 255.0);
+            }
+        }
+    }
+
+    /**
+     * Luminance of the floor under given point. The texture spans the whole ground plane, outside it the floor is white.
+     * @param x     World x coordinate [m]
+     * @param z     World z coordinate [m]
+     * @return      Luminance in [0,1], 0 is black
+     */
+    public double floorLuminance(double x, double z) {
+        if (floor == null) return 1;
+        int col = (int) ((x + floorX / 2) / floorX * floorWidth);
+        int row = (int) ((z + floorZ / 2) / floorZ * floorHeight);
+        if (col < 0 || row < 0 || col >= floorWidth || row >= floorHeight) return 1;
+        return floor[row * floorWidth + col];
+    }
+
+    /**
+     * Casts a ray and returns the distance to the nearest obstacle
+     * @param x         Origin of the ray
+     * @param z         Origin of the ray
+     * @param dx        Unit direction of the ray
+     * @param dz        Unit direction of the ray
+     * @param range     Maximal distance
+     * @return          Distance to the nearest obstacle, or range if there is none closer
+     */
+    public double castRay(double x, double z, double dx, double dz, double range) {
+        double nearest = range;
+        for (int i = 0; i < boxesNo; i++) {
+            double c = boxCos[i], s = boxSin[i];
+            // Ray in obstacle's own frame
+            double ox = (x - boxX[i]) * c - (z - boxZ[i]) * s;
+            double oz = (x - boxX[i]) * s + (z - boxZ[i]) * c;
+            double rx = dx * c - dz * s;
+            double rz = dx * s + dz * c;
+
+            double tmin = 0, tmax = nearest;
+            if (Math.abs(rx) < 1e-12) {
+                if (ox < -boxHalfX[i] || ox > boxHalfX[i]) continue;
+            } else {
+                double t1 = (-boxHalfX[i] - ox) / rx, t2 = (boxHalfX[i] - ox) / rx;
+                tmin = Math.max(tmin, Math.min(t1, t2));
+                tmax = Math.min(tmax, Math.max(t1, t2));
+            }
+            if (Math.abs(rz) < 1e-12) {
+                if (oz < -boxHalfZ[i] || oz > boxHalfZ[i]) continue;
+            } else {
+                double t1 = (-boxHalfZ[i] - oz) / rz, t2 = (boxHalfZ[i] - oz) / rz;
+                tmin = Math.max(tmin, Math.min(t1, t2));
+                tmax = Math.min(tmax, Math.max(t1, t2));
+            }
+            if (tmin <= tmax && tmin < nearest) nearest = tmin;
+        }
+        return nearest;
+    }
+
+    /**
+     * Checks whether a disc overlaps any obstacle
+     * @param x         Centre of the disc
+     * @param z         Centre of the disc
+     * @param radius    Radius of the disc
+     * @return          True if the disc touches an obstacle
+     */
+    public boolean collides(double x, double z, double radius) {
+        for (int i = 0; i < boxesNo; i++) {
+            double c = boxCos[i], s = boxSin[i];
+            double ox = (x - boxX[i]) * c - (z - boxZ[i]) * s;
+            double oz = (x - boxX[i]) * s + (z - boxZ[i]) * c;
+            double px = Math.max(-boxHalfX[i], Math.min(boxHalfX[i], ox));
+            double pz = Math.max(-boxHalfZ[i], Math.min(boxHalfZ[i], oz));
+            if ((ox - px) * (ox - px) + (oz - pz) * (oz - pz) < radius * radius) return true;
+        }
+        return false;
+    }
+
+    /* Getters */
+
+    public int getBoxesNo() {
+        return boxesNo;
+    }
+
+    public double getStartX() {
+        return startX;
+    }
+
+    public double getStartZ() {
+        return startZ;
+    }
+
+    public double getStartHeading() {
+        return startHeading;
+    }
+
+    /**
+     * Node of a VRML scene graph
+     */
+    private static class VrmlNode {
+        String type;
+        String def;
+        Map<String, Object> fields = new HashMap<String, Object>();
+
+        /**
+         * @return  Numeric value of a field, or null if node does not have the field
+         */
+        double[] numbers(String field) {
+            Object value = fields.get(field);
+            if (!(value instanceof List)) return null;
+            List<?> list = (List<?>) value;
+            double[] result = new double[list.size()];
+            for (int i = 0; i < result.length; i++) {
+                if (!(list.get(i) instanceof Double)) return null;
+                result[i] = (Double) list.get(i);
+            }
+            return result;
+        }
+
+        /**
+         * @return  First string of a field, or null if node does not have the field
+         */
+        String string(String field) {
+            Object value = fields.get(field);
+            if (!(value instanceof List)) return null;
+            for (Object o : (List<?>) value) {
+                if (o instanceof String) return (String) o;
+            }
+            return null;
+        }
+
+        /**
+         * @return  First direct child of given type
+         */
+        VrmlNode findChild(String childType) {
+            Object children = fields.get("children");
+            if (!(children instanceof List)) return null;
+            for (Object o : (List<?>) children) {
+                if (o instanceof VrmlNode && ((VrmlNode) o).type.equals(childType)) return (VrmlNode) o;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Recursive descent parser of the VRML97 subset written by Webots. Field values are stored as a node, or as a
+     * list of nodes, Doubles, Strings and Booleans.
+     */
+    private static class VrmlParser {
+        private Reader reader;
+        private int c;                                  // Current character
+        private String token;                           // Current token
+        private boolean quoted;                         // Whether current token was a string literal
+        private Map<String, VrmlNode> defs = new HashMap<String, VrmlNode>();
+
+        VrmlParser(Reader reader) throws IOException {
+            this.reader = reader;
+            c = reader.read();
+            advance();
+        }
+
+        List<VrmlNode> parse() throws IOException {
+            List<VrmlNode> nodes = new ArrayList<VrmlNode>();
+            while (token != null) nodes.add(node());
+            return nodes;
+        }
+
+        private VrmlNode node() throws IOException {
+            String def = null;
+            if (is("USE")) {
+                advance();
+                VrmlNode used = defs.get(token);
+                advance();
+                if (used == null) throw new IOException("Undefined node used");
+                return used;
+            }
+            if (is("DEF")) {
+                advance();
+                def = token;
+                advance();
+            }
+            VrmlNode node = new VrmlNode();
+            node.type = token;
+            node.def = def;
+            if (def != null) defs.put(def, node);
+            advance();
+            expect("{");
+            while (token != null && !is("}")) {
+                String field = token;
+                advance();
+                node.fields.put(field, value());
+            }
+            expect("}");
+            return node;
+        }
+
+        private Object value() throws IOException {
+            List<Object> values = new ArrayList<Object>();
+            if (is("[")) {
+                advance();
+                while (token != null && !is("]")) values.add(item());
+                expect("]");
+                return values;
+            }
+            if (!quoted && (is("TRUE") || is("FALSE"))) {
+                values.add(Boolean.valueOf(is("TRUE")));
+                advance();
+                return values;
+            }
+            if (!quoted && !isNumber()) return node();
+            while (token != null && (quoted || isNumber())) values.add(item());
+            return values;
+        }
+
+        private Object item() throws IOException {
+            Object item;
+            if (quoted) item = token;
+            else if (isNumber()) item = Double.valueOf(token);
+            else if (is("TRUE") || is("FALSE")) item = Boolean.valueOf(is("TRUE"));
+            else return node();
+            advance();
+            return item;
+        }
+
+        private boolean is(String s) {
+            return !quoted && s.equals(token);
+        }
+
+        private boolean isNumber() {
+            if (token == null || quoted) return false;
+            char first = token.charAt(0);
+            return Character.isDigit(first) || first == '-' || first == '+' || first == '.';
+        }
+
+        private void expect(String s) throws IOException {
+            if (!is(s)) throw new IOException("Expected " + s + " but found " + token);
+            advance();
+        }
+
+        /**
+         * Reads next token, skipping white space, commas and comments
+         */
+        private void advance() throws IOException {
+            while (c != -1 && (Character.isWhitespace(c) || c == ',' || c == '#')) {
+                if (c == '#') {
+                    while (c != -1 && c != '\n') c = reader.read();
+                } else {
+                    c = reader.read();
+                }
+            }
+            quoted = false;
+            if (c == -1) {
+                token = null;
+                return;
+            }
+            StringBuilder sb = new StringBuilder();
+            if (c == '"') {
+                c = reader.read();
+                while (c != -1 && c != '"') {
+                    sb.append((char) c);
+                    c = reader.read();
+                }
+                c = reader.read();
+                quoted = true;
+            } else if (c == '{' || c == '}' || c == '[' || c == ']') {
+                sb.append((char) c);
+                c = reader.read();
+            } else {
+                while (c != -1 && !Character.isWhitespace(c) && c != ',' && c != '{' && c != '}' && c != '['
+                        && c != ']' && c != '"' && c != '#') {
+                    sb.append((char) c);
+                    c = reader.read();
+                }
+            }
+            token = sb.toString();
+        }
+    }
+}
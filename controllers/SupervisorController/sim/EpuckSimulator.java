@@ -0,0 +1,263 @@
+package sim;
+
+import evolution.Evaluator;
+import evolution.Population;
+import nn.FeedForward;
+import utils.Rng;
+
+/**
+ * Kinematic differential-drive e-puck that runs the trial of EpuckController without Webots. It reproduces what the
+ * controller sees - the six enabled proximity sensors (ps0, ps1, ps3, ps4, ps6, ps7) corrected by
+ * PS_OFFSET_SIMULATION, the three floor sensors, wheel speeds in SPEED_RANGE units - and scores every time step with
+ * the same three games, so fitness it reports is interchangeable with the one sent by the robot.
+ * Sensor noise of every trial is drawn from the individual's own random stream (Population.getSeed()), so fitness
+ * does not depend on which simulator runs the trial. One simulator is not thread safe; create one per worker.
+ */
+public class EpuckSimulator implements Evaluator {
+
+    // Controller constants (see EpuckController)
+    private final int LEFT = 0;
+    private final int RIGHT = 1;
+    private final int TIME_STEP = 256;              // [ms]
+    private final int PS_RANGE = 3800;
+    private final int SPEED_RANGE = 500;
+    private final double OBSTACLE_THRESHOLD = 3000;
+    private final int TRIAL_DURATION = 120000;      // [ms]
+    private final int NB_INPUTS = 9;
+    private final int NB_HIDDEN_NEURONS = 8;
+    private final int NB_OUTPUTS = 2;
+    private final int NB_PROXIMITY_SENSORS = 6;
+    private final int NB_FLOOR_SENSORS = 3;
+    private final int GAME_POP_SIZE = 3;
+    private int[] PS_OFFSET_SIMULATION = new int[]{300, 300, 300, 300, 300, 300};
+    private double[] MAX_REWARD = new double[]{2, 1, 1};   // Highest fitness each game awards in one step
+
+    // Robot model (see EPUCK node of the world)
+    private final double AXLE_LENGTH = 0.052;       // [m]
+    private final double WHEEL_RADIUS = 0.0205;     // [m]
+    private final double SPEED_UNIT = 0.00628;      // [rad/s] per unit of speed
+    private final double MAX_SPEED = 1000;          // [units]
+    private final double BODY_RADIUS = 0.037;       // [m]
+
+    // Pose of enabled proximity sensors in robot's frame: x, z, orientation [rad]
+    private final double[][] PS_POSE = new double[][]{
+            {0.01, -0.03, 1.27},        // ps0
+            {0.025, -0.022, 0.77},      // ps1
+            {0.015, 0.03, 5.21},        // ps3
+            {-0.015, 0.03, 4.31},       // ps4
+            {-0.025, -0.022, 2.37},     // ps6
+            {-0.01, -0.03, 1.87}};      // ps7
+    private final double PS_MAX_RANGE = 0.1;        // [m] lookup table: 0 -> 3800, 0.1 -> 300
+    private final double PS_NOISE = 0.03;
+
+    // Position of floor sensors in robot's frame: x, z
+    private final double[][] FS_POSE = new double[][]{{-0.01, -0.03}, {0, -0.03}, {0.01, -0.03}};
+    private final double FS_WHITE = 868.75;         // Reading above white floor, 3 mm away
+    private final double FS_NOISE = 0.1;
+
+    private Arena arena;
+    private FeedForward network;
+    private Rng random = new Rng(0);
+    private boolean noise = true;
+    private double[] eliteCutoffs;                  // Racing cutoffs of each game, null if trials always run to the end
+    private long stepsRun;                          // Time steps simulated so far
+
+    private double x, z, heading;                   // Pose of the robot
+    private double[] ps_value = new double[NB_PROXIMITY_SENSORS];
+    private double[] fs_value = new double[NB_FLOOR_SENSORS];
+    private double[] states = new double[NB_INPUTS];
+    private double[] outputs = new double[NB_OUTPUTS];
+    private double[] speed = new double[2];
+    private double maxIRActivation;
+
+    /**
+     * @param arena     World the robot is placed in
+     */
+    public EpuckSimulator(Arena arena) {
+        this.arena = arena;
+        network = new FeedForward(NB_INPUTS, NB_OUTPUTS, NB_HIDDEN_NEURONS);
+    }
+
+    /**
+     * Runs a full trial (TRIAL_DURATION) of one individual from the start pose of the world
+     * @param population    Population the individual belongs to
+     * @param individual    Index of individual in population
+     * @param fitness       Receives fitness of individual on every game
+     */
+    public void evaluate(Population population, int individual, double[] fitness) {
+        float[] genes = population.getGenes();
+        int offset = population.offset(individual);
+        int i;
+
+        for (i = 0; i < GAME_POP_SIZE; i++) fitness[i] = 0;
+        random.setSeed(population.getSeed(individual));
+        x = arena.getStartX();
+        z = arena.getStartZ();
+        heading = arena.getStartHeading();
+
+        // The controller counts the first step of a trial before driving, hence one step less than the duration
+        int steps = getTrialSteps();
+        for (int step = 1; step <= steps; step++) {
+            updateSensorReadings();
+            network.run(genes, offset, states, 0, outputs, 0);
+            speed[LEFT] = SPEED_RANGE * outputs[0];
+            speed[RIGHT] = SPEED_RANGE * outputs[1];
+            move(speed[LEFT], speed[RIGHT]);
+
+            // The controller zeroes speed of a blocked robot after it has been set, so only fitness sees it
+            for (i = 0; i < NB_PROXIMITY_SENSORS; i++) {
+                double temp_ps = ps_value[i] - PS_OFFSET_SIMULATION[i] < 0 ? 0 : ps_value[i] - PS_OFFSET_SIMULATION[i];
+                if (OBSTACLE_THRESHOLD < temp_ps) {
+                    speed[LEFT] = 0;
+                    speed[RIGHT] = 0;
+                    break;
+                }
+            }
+            computeFitness(fitness);
+            stepsRun++;
+
+            // Racing, as in EpuckController: give up once no game can reach its elite cutoff
+            if (eliteCutoffs != null && raceLost(fitness, steps - step)) {
+                for (i = 0; i < GAME_POP_SIZE; i++) fitness[i] *= steps / (double) step;
+                break;
+            }
+        }
+    }
+
+    /**
+     * @param fitness       Fitness scored so far
+     * @param remaining     Number of steps left in the trial
+     * @return              True if maximal rewards in all remaining steps leave every game below its cutoff
+     */
+    private boolean raceLost(double[] fitness, int remaining) {
+        for (int i = 0; i < GAME_POP_SIZE; i++) {
+            if (fitness[i] + remaining * MAX_REWARD[i] >= eliteCutoffs[i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Same games as EpuckController.computeFitness()
+     */
+    private void computeFitness(double[] fitness) {
+        // Avoid obstacles
+        int currentFitness0 = 0;
+        if (maxIRActivation > OBSTACLE_THRESHOLD) currentFitness0 -= 1;
+        if ((Math.abs(speed[LEFT]) - speed[RIGHT]) >= 50) currentFitness0 -= 1;
+        if (speed[LEFT] == 0 && speed[RIGHT] == 0) currentFitness0 -= 1;
+        if (speed[LEFT] > 300 && speed[RIGHT] > 300) currentFitness0 += 2;
+        fitness[0] += currentFitness0;
+
+        // Follow wall
+        int currentFitness1 = 0;
+        if (speed[LEFT] < 300 && speed[RIGHT] < 300) currentFitness1 -= 1;
+        if (states[1] > OBSTACLE_THRESHOLD || states[4] > OBSTACLE_THRESHOLD) currentFitness1 += 1;
+        if (speed[LEFT] == 0 && speed[RIGHT] == 0) currentFitness1 -= 1;
+        if ((Math.abs(speed[LEFT]) - speed[RIGHT]) >= 50) currentFitness1 -= 2;
+        fitness[1] += currentFitness1;
+
+        // Follow black line
+        int currentFitness2 = 0;
+        if (fs_value[0] < 400 || fs_value[1] < 400 || fs_value[2] < 400) currentFitness2 += 1;
+        if (speed[LEFT] < 200 && speed[RIGHT] < 200) currentFitness2 -= 1;
+        if (fs_value[1] > 500) currentFitness2 -= 1;
+        fitness[2] += currentFitness2;
+    }
+
+    /**
+     * Reads proximity and floor sensors at current pose into the inputs of the network, the way
+     * EpuckController.updateSenorReadings() does.
+     */
+    private void updateSensorReadings() {
+        double cos = Math.cos(heading), sin = Math.sin(heading);
+        int i;
+
+        maxIRActivation = 0;
+        for (i = 0; i < NB_PROXIMITY_SENSORS; i++) {
+            double sx = x + PS_POSE[i][0] * cos + PS_POSE[i][1] * sin;
+            double sz = z - PS_POSE[i][0] * sin + PS_POSE[i][1] * cos;
+            double angle = heading + PS_POSE[i][2];
+            double distance = arena.castRay(sx, sz, Math.cos(angle), -Math.sin(angle), PS_MAX_RANGE);
+            double value = 3800 - distance / PS_MAX_RANGE * 3500;
+            if (noise) value += random.nextGaussian() * PS_NOISE * value;
+            ps_value[i] = value;
+            // Operator precedence as in the controller: offset is divided by the range, the reading is not
+            states[i] = value - PS_OFFSET_SIMULATION[i] < 0 ? 0 : (value - (PS_OFFSET_SIMULATION[i]) / PS_RANGE);
+            if (states[i] > maxIRActivation) maxIRActivation = states[i];
+        }
+        for (i = 0; i < NB_FLOOR_SENSORS; i++) {
+            double fx = x + FS_POSE[i][0] * cos + FS_POSE[i][1] * sin;
+            double fz = z - FS_POSE[i][0] * sin + FS_POSE[i][1] * cos;
+            double value = FS_WHITE * arena.floorLuminance(fx, fz);
+            if (noise) value += random.nextGaussian() * FS_NOISE * value;
+            fs_value[i] = value;
+            states[NB_PROXIMITY_SENSORS + i] = value;
+        }
+    }
+
+    /**
+     * Integrates wheel speeds over one time step. A move that would overlap an obstacle only turns the robot.
+     * @param left      Speed of left wheel [units]
+     * @param right     Speed of right wheel [units]
+     */
+    private void move(double left, double right) {
+        if (left > MAX_SPEED) left = MAX_SPEED;
+        if (left < -MAX_SPEED) left = -MAX_SPEED;
+        if (right > MAX_SPEED) right = MAX_SPEED;
+        if (right < -MAX_SPEED) right = -MAX_SPEED;
+
+        double dt = TIME_STEP / 1000.0;
+        double vLeft = left * SPEED_UNIT * WHEEL_RADIUS;
+        double vRight = right * SPEED_UNIT * WHEEL_RADIUS;
+        double v = (vLeft + vRight) / 2;
+        double omega = (vRight - vLeft) / AXLE_LENGTH;
+
+        // Midpoint heading keeps arcs accurate over the long time step
+        double mid = heading + omega * dt / 2;
+        double nx = x - v * dt * Math.sin(mid);
+        double nz = z - v * dt * Math.cos(mid);
+        heading += omega * dt;
+        if (!arena.collides(nx, nz, BODY_RADIUS)) {
+            x = nx;
+            z = nz;
+        }
+    }
+
+    /**
+     * @param noise     If false, sensors return noiseless readings
+     */
+    public void setNoise(boolean noise) {
+        this.noise = noise;
+    }
+
+    /**
+     * Enables racing. The array is read at every trial, so its owner can update cutoffs between generations.
+     * @param eliteCutoffs  Raw fitness of the worst elite on each game, or null to run every trial to the end
+     */
+    public void setEliteCutoffs(double[] eliteCutoffs) {
+        this.eliteCutoffs = eliteCutoffs;
+    }
+
+    /**
+     * @return  Number of time steps of a complete trial
+     */
+    public int getTrialSteps() {
+        return TRIAL_DURATION / TIME_STEP - 1;
+    }
+
+    public long getStepsRun() {
+        return stepsRun;
+    }
+
+    public double getX() {
+        return x;
+    }
+
+    public double getZ() {
+        return z;
+    }
+
+    public double getHeading() {
+        return heading;
+    }
+}
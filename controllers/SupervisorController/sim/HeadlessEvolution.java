@@ -0,0 +1,123 @@
+package sim;
+
+import evolution.Evaluator;
+import evolution.EvaluatorFactory;
+import evolution.EvolutionEngine;
+import evolution.EvolutionLogger;
+import evolution.Migration;
+import evolution.ParallelEvaluator;
+import utils.Rng;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs the evolution of SupervisorController without Webots, evaluating every individual in EpuckSimulator.
+ * Results are written to out/ exactly as during a Webots run, so Webots is only needed to validate the final genomes.
+ * Usage: java sim.HeadlessEvolution [generations] [workers] [world file] [seed]
+ *        [VEGA|NSGA2|ELITISM|STEADY_STATE] [island islands directory [RING|FULLY_CONNECTED] [size] [interval]]
+ * Runs with the same seed give identical results whatever the number of workers, except in steady state, where
+ * the order in which trials finish decides which offspring are bred from which parents. Steady state runs the same
+ * number of trials and does not race them.
+ * Several islands are several processes given the same seed, number of islands and shared directory and each its
+ * own index; every island derives its own seed from the common one. Logs go to out/, so every island has to run in a
+ * working directory of its own, e.g. for island 0 of 4 in a ring:
+ *   cd island0; java sim.HeadlessEvolution 100 2 ../e-puck_line.wbt 42 VEGA 0 4 ../migration
+ */
+public class HeadlessEvolution {
+
+    private static int GENERATIONS = 100;
+    private static int WORKERS = Runtime.getRuntime().availableProcessors();
+    private static String WORLD = "../../worlds/e-puck_line.wbt";
+    private static long SEED = System.nanoTime();
+    private static int ALGORITHM = EvolutionEngine.VEGA;
+    private static int RACING = 1;                  // If 1, trials that cannot reach the elite are abandoned
+    private static int ISLAND = 0;
+    private static int ISLANDS = 1;                 // If more than 1, best individuals migrate between islands
+    private static String MIGRATION_DIR = "../migration";
+    private static int TOPOLOGY = Migration.RING;
+    private static int MIGRATION_SIZE = 3;          // Individuals sent at every migration
+    private static int MIGRATION_INTERVAL = 5;      // Generations between migrations
+    private static int NN_POP_SIZE = 30;
+    private static int GAME_POP_SIZE = 3;
+    private static int NB_INPUTS = 9;
+    private static int NB_OUTPUTS = 2;
+    private static int NB_HIDDEN_NEURONS = 8;
+
+    public static void main(String[] args) {
+        if (args.length > 0) GENERATIONS = Integer.parseInt(args[0]);
+        if (args.length > 1) WORKERS = Integer.parseInt(args[1]);
+        if (args.length > 2) WORLD = args[2];
+        if (args.length > 3) SEED = Long.parseLong(args[3]);
+        if (args.length > 4) ALGORITHM = EvolutionEngine.algorithmOf(args[4]);
+        if (args.length > 7) {
+            ISLAND = Integer.parseInt(args[5]);
+            ISLANDS = Integer.parseInt(args[6]);
+            MIGRATION_DIR = args[7];
+        }
+        if (args.length > 8) TOPOLOGY = Migration.topologyOf(args[8]);
+        if (args.length > 9) MIGRATION_SIZE = Integer.parseInt(args[9]);
+        if (args.length > 10) MIGRATION_INTERVAL = Integer.parseInt(args[10]);
+        if (ISLANDS > 1) SEED = Rng.mix(SEED, ISLAND);
+
+        final Arena arena;
+        try {
+            arena = Arena.load(WORLD);
+        } catch (IOException e) {
+            System.err.println("Cannot load world " + WORLD + ": " + e.getMessage());
+            return;
+        }
+        new File("out").mkdirs();
+
+        EvolutionEngine engine = new EvolutionEngine(NN_POP_SIZE, GAME_POP_SIZE, NB_INPUTS, NB_OUTPUTS,
+                NB_HIDDEN_NEURONS, SEED);
+        System.out.println("Seed: " + SEED);
+        engine.setAlgorithm(ALGORITHM);
+        if (ISLANDS > 1) {
+            System.out.println("Island " + ISLAND + " of " + ISLANDS);
+            engine.setMigration(new Migration(MIGRATION_DIR, ISLAND, ISLANDS, TOPOLOGY, MIGRATION_SIZE,
+                    MIGRATION_INTERVAL));
+        }
+        EvolutionLogger logger = new EvolutionLogger(NN_POP_SIZE, GAME_POP_SIZE, engine.getGenesNo());
+        engine.setListener(logger);
+        engine.initialise();
+
+        // Cutoffs are shared by all simulators; nothing is abandoned before the first generation is known
+        final double[] eliteCutoffs = new double[GAME_POP_SIZE];
+        Arrays.fill(eliteCutoffs, Double.NEGATIVE_INFINITY);
+        final List<EpuckSimulator> simulators = new ArrayList<EpuckSimulator>();
+        ParallelEvaluator evaluator = new ParallelEvaluator(new EvaluatorFactory() {
+            public Evaluator create(int worker) {
+                EpuckSimulator simulator = new EpuckSimulator(arena);
+                if (RACING == 1) simulator.setEliteCutoffs(eliteCutoffs);
+                simulators.add(simulator);
+                return simulator;
+            }
+        }, WORKERS);
+
+        long start = System.nanoTime();
+        try {
+            if (ALGORITHM == EvolutionEngine.STEADY_STATE) {
+                engine.runSteadyState(evaluator, GENERATIONS);
+            } else {
+                for (int i = 0; i < GENERATIONS; i++) {
+                    engine.runGeneration(evaluator);
+                    System.arraycopy(engine.getEliteCutoffs(), 0, eliteCutoffs, 0, GAME_POP_SIZE);
+                }
+            }
+        } finally {
+            evaluator.shutdown();
+            logger.close();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long steps = 0;
+        for (EpuckSimulator simulator : simulators) steps += simulator.getStepsRun();
+        System.out.println(GENERATIONS + " generations (" + GENERATIONS * NN_POP_SIZE + " trials) in " + seconds
+                + " s on " + WORKERS + " workers, " + GENERATIONS * NN_POP_SIZE / seconds + " trials/s");
+        System.out.println("Simulated " + steps + " of " + (long) GENERATIONS * NN_POP_SIZE
+                * simulators.get(0).getTrialSteps() + " time steps");
+    }
+}
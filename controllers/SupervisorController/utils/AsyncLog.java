@@ -0,0 +1,411 @@
+package utils;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+
+/**
+ * Log files written by a background thread (a copy lives in each controller). The simulation thread only copies
+ * the numbers of a record into a preallocated ring buffer; turning them into text, writing and flushing happen on the
+ * writer thread, which drains all pending records at once and flushes every file it touched once per batch.
+ * If the ring is full, a new record waits at most MAX_WAIT ms for the writer and is then dropped, so a slow disk
+ * can never stall a control step for long. Dropped records are reported when the log is closed. A record is never
+ * dropped for its size: the ring of values grows to twice the largest record once the writer has emptied it. The
+ * log is closed on JVM shutdown if close() has not been called.
+ * Binary files (GenomeArchive, FitnessStore) hand whole blocks to the writer thread as tasks, see submit().
+ */
+public class AsyncLog {
+
+    /**
+     * Renders a record into text. Runs on the writer thread.
+     */
+    public interface Format {
+        /**
+         * @param out       File the record is written to
+         * @param tag       First integer of the record
+         * @param arg       Second integer of the record
+         * @param values    Values of the record
+         * @param length    Number of values
+         */
+        void write(Writer out, int tag, int arg, double[] values, int length) throws IOException;
+    }
+
+    private static final Metrics.Histogram WAIT = Metrics.histogram("log.wait.ns");
+    private static final Metrics.Histogram FLUSH = Metrics.histogram("log.flush.ns");
+    private static final Metrics.Counter DROPPED = Metrics.counter("log.dropped");
+
+    private int MAX_WAIT = 50;                  // [ms] longest a producer waits for free space
+    private int FLUSH_INTERVAL = 1000;          // [ms] longest a written record waits to be flushed
+
+    // Files
+    private ArrayList<String> paths = new ArrayList<String>();
+    private ArrayList<Writer> writers = new ArrayList<Writer>();
+    private ArrayList<Boolean> overwrite = new ArrayList<Boolean>();
+
+    // Ring of records; values of record r are values[start[r] ...] and wrap around the end of the array
+    private int[] file, tag, arg, start, length;
+    private Format[] format;
+    private String[] text;
+    private Runnable[] task;
+    private double[] values;
+    private int head, count;                    // Next free record and number of pending records
+    private int valueHead, valueCount;
+    private boolean building;                   // A record has been started and not yet queued
+
+    private double[] scratch = new double[64];  // Values of the record being written, owned by writer thread
+    private boolean closed;
+    private long dropped;
+    private Thread writer;
+
+    /**
+     * @param records   Number of records the ring holds
+     * @param values    Number of values the ring holds, best twice as many as the largest record
+     */
+    public AsyncLog(int records, int values) {
+        file = new int[records];
+        tag = new int[records];
+        arg = new int[records];
+        start = new int[records];
+        length = new int[records];
+        format = new Format[records];
+        text = new String[records];
+        task = new Runnable[records];
+        this.values = new double[values];
+
+        writer = new Thread("log writer") {
+            public void run() {
+                drain();
+            }
+        };
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            public void run() {
+                close();
+            }
+        });
+    }
+
+    /**
+     * Registers a log file. The file is created by the writer thread when its first record is written.
+     * @param path          Path of file
+     * @param overwrite     If true, every record replaces the contents of the file; otherwise records are appended
+     * @return              Handle of file used by append()
+     */
+    public synchronized int open(String path, boolean overwrite) {
+        paths.add(path);
+        writers.add(null);
+        this.overwrite.add(overwrite);
+        return paths.size() - 1;
+    }
+
+    /**
+     * Starts a record. Its values are given by put() and it is queued by end(). Only one thread may build records
+     * of a log at a time.
+     * @param file      Handle of file
+     * @param format    Format that renders the record
+     * @param tag       First integer of the record, e.g. generation
+     * @param arg       Second integer of the record, e.g. number of values in a row
+     * @param length    Number of values that will be put
+     * @return          False if the ring stayed full and the record is dropped; puts are then ignored
+     */
+    public synchronized boolean begin(int file, Format format, int tag, int arg, int length) {
+        building = reserve(length);
+        if (!building) return false;
+        int r = head;
+        this.file[r] = file;
+        this.format[r] = format;
+        this.text[r] = null;
+        this.task[r] = null;
+        this.tag[r] = tag;
+        this.arg[r] = arg;
+        this.start[r] = valueHead;
+        this.length[r] = length;
+        valueCount += length;
+        return true;
+    }
+
+    public synchronized void put(double value) {
+        if (!building) return;
+        values[valueHead] = value;
+        valueHead = (valueHead + 1) % values.length;
+    }
+
+    public synchronized void put(double[] src, int offset, int length) {
+        if (!building) return;
+        for (int i = 0; i < length; i++) {
+            values[valueHead] = src[offset + i];
+            valueHead = (valueHead + 1) % values.length;
+        }
+    }
+
+    public synchronized void put(float[] src, int offset, int length) {
+        if (!building) return;
+        for (int i = 0; i < length; i++) {
+            values[valueHead] = src[offset + i];
+            valueHead = (valueHead + 1) % values.length;
+        }
+    }
+
+    /**
+     * Queues the record started by begin() and wakes the writer up
+     */
+    public synchronized void end() {
+        if (!building) return;
+        building = false;
+        valueHead = (start[head] + length[head]) % values.length;
+        head = (head + 1) % file.length;
+        count++;
+        notifyAll();
+    }
+
+    /**
+     * Queues a record of consecutive values
+     * @param file      Handle of file
+     * @param format    Format that renders the record
+     * @param tag       First integer of the record
+     * @param arg       Second integer of the record
+     * @param src       Array holding the values
+     * @param offset    Index of first value
+     * @param length    Number of values
+     */
+    public synchronized void append(int file, Format format, int tag, int arg, double[] src, int offset, int length) {
+        if (begin(file, format, tag, arg, length)) {
+            put(src, offset, length);
+            end();
+        }
+    }
+
+    public synchronized void append(int file, Format format, int tag, int arg, float[] src, int offset, int length) {
+        if (begin(file, format, tag, arg, length)) {
+            put(src, offset, length);
+            end();
+        }
+    }
+
+    /**
+     * Queues a line of text, e.g. the header of a file
+     * @param file      Handle of file
+     * @param line      Text written as it is, followed by a new line
+     */
+    public synchronized void text(int file, String line) {
+        if (begin(file, null, 0, 0, 0)) {
+            this.text[head] = line;
+            end();
+        }
+    }
+
+    /**
+     * Queues a task for the writer thread, e.g. writing a block of a binary file; tasks and records are handled in
+     * the order they were queued. Unlike a record, a task is never dropped: the caller waits for a free record if
+     * the ring is full, and runs the task itself once the log is closed. Tasks should own the data they write.
+     * @param task  Task run on the writer thread
+     */
+    public void submit(Runnable task) {
+        synchronized (this) {
+            long start = 0;
+            while (!closed && count == file.length) {
+                if (start == 0) start = System.nanoTime();
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            if (start != 0) WAIT.record(System.nanoTime() - start);
+            if (!closed && count < file.length) {
+                int r = head;
+                this.task[r] = task;
+                this.format[r] = null;
+                this.text[r] = null;
+                this.start[r] = valueHead;
+                this.length[r] = 0;
+                head = (head + 1) % file.length;
+                count++;
+                notifyAll();
+                return;
+            }
+        }
+        task.run();
+    }
+
+    /**
+     * Waits for space in the ring. Caller holds the lock.
+     * @return  False if the record has to be dropped
+     */
+    private boolean reserve(int n) {
+        long start = 0;
+        if (2 * n > values.length) {
+            // Too large to ever fit beside other records: wait until no record holds values, then grow the ring
+            while (!closed && valueCount > 0) {
+                if (start == 0) start = System.nanoTime();
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            if (valueCount == 0) {
+                values = new double[2 * n];
+                valueHead = 0;
+            }
+        }
+        long deadline = System.currentTimeMillis() + MAX_WAIT;
+        while (!closed && n <= values.length && (count == file.length || valueCount + n > values.length)) {
+            long wait = deadline - System.currentTimeMillis();
+            if (wait <= 0) break;
+            if (start == 0) start = System.nanoTime();
+            try {
+                wait(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if (start != 0) WAIT.record(System.nanoTime() - start);
+        if (closed || n > values.length || count == file.length || valueCount + n > values.length) {
+            dropped++;
+            DROPPED.increment();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Writer thread: writes pending records in batches until the log is closed and empty
+     */
+    private void drain() {
+        boolean[] touched = new boolean[0];
+        while (true) {
+            int first, n;
+            synchronized (this) {
+                while (count == 0 && !closed) {
+                    try {
+                        wait(FLUSH_INTERVAL);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (count == 0) break;
+                n = count;
+                first = (head - count + file.length) % file.length;
+                if (touched.length < writers.size()) touched = new boolean[writers.size()];
+            }
+
+            // Records first ... first + n are not reused until they are released below
+            Events.LogFlush event = new Events.LogFlush();
+            event.begin();
+            long start = System.nanoTime();
+            int released = 0, files = 0;
+            for (int i = 0; i < n; i++) {
+                int r = (first + i) % file.length;
+                if (task[r] != null) {
+                    try {
+                        task[r].run();
+                    } catch (RuntimeException e) {
+                        System.err.println("Log task failed: " + e);
+                    }
+                    task[r] = null;
+                    continue;
+                }
+                write(r);
+                touched[file[r]] = true;
+                released += length[r];
+                format[r] = null;
+                text[r] = null;
+            }
+            for (int f = 0; f < touched.length; f++) {
+                if (!touched[f]) continue;
+                touched[f] = false;
+                files++;
+                Writer out = writers.get(f);
+                if (out == null) continue;
+                try {
+                    out.flush();
+                } catch (IOException e) {
+                    System.err.println("Cannot flush " + paths.get(f) + ": " + e.getMessage());
+                }
+            }
+            FLUSH.record(System.nanoTime() - start);
+            event.records = n;
+            event.files = files;
+            event.commit();
+
+            synchronized (this) {
+                count -= n;
+                valueCount -= released;
+                notifyAll();
+            }
+        }
+
+        for (int f = 0; f < writers.size(); f++) {
+            if (writers.get(f) == null) continue;
+            try {
+                writers.get(f).close();
+            } catch (IOException e) {
+                System.err.println("Cannot close " + paths.get(f) + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Writes one record. Files that are overwritten are opened and closed around every record.
+     */
+    private void write(int r) {
+        int f = file[r];
+        String path;
+        boolean replace;
+        Writer out;
+        synchronized (this) {
+            path = paths.get(f);
+            replace = overwrite.get(f);
+            out = writers.get(f);
+        }
+        try {
+            if (replace) out = new BufferedWriter(new FileWriter(path));
+            else if (out == null) {
+                out = new BufferedWriter(new FileWriter(path));
+                synchronized (this) {
+                    writers.set(f, out);
+                }
+            }
+
+            if (text[r] != null) {
+                out.write(text[r]);
+                out.write("\n");
+            } else {
+                if (scratch.length < length[r]) scratch = new double[length[r]];
+                for (int i = 0; i < length[r]; i++) scratch[i] = values[(start[r] + i) % values.length];
+                format[r].write(out, tag[r], arg[r], scratch, length[r]);
+            }
+            if (replace) out.close();
+        } catch (IOException e) {
+            System.err.println("Cannot write " + path + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes all pending records, closes the files and stops the writer thread. Records appended later are dropped.
+     */
+    public void close() {
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            notifyAll();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (dropped > 0) System.err.println("Log dropped " + dropped + " records while the disk was busy");
+    }
+
+    public synchronized long getDropped() {
+        return dropped;
+    }
+}
@@ -0,0 +1,81 @@
+package utils;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Java Flight Recorder events of the evolution (a copy lives in each controller). Events cost next to nothing
+ * unless a recording is running, e.g. java -XX:StartFlightRecording=filename=run.jfr ...
+ * Duration events are started with begin() and committed with commit(); the others are just committed.
+ */
+public class Events {
+
+    private Events() {
+    }
+
+    @Name("evolution.Generation")
+    @Label("Generation")
+    @Category("Evolution")
+    public static class Generation extends Event {
+        @Label("Generation")
+        public int generation;
+    }
+
+    @Name("evolution.Breeding")
+    @Label("Breeding")
+    @Category("Evolution")
+    public static class Breeding extends Event {
+        @Label("Generation")
+        public int generation;
+    }
+
+    @Name("evolution.Trial")
+    @Label("Trial")
+    @Category("Evolution")
+    public static class Trial extends Event {
+        @Label("Generation")
+        public int generation;
+        @Label("Individual")
+        public int individual;
+        @Label("Control steps")
+        public int steps;
+    }
+
+    @Name("evolution.GenomeDispatched")
+    @Label("Genome Dispatched")
+    @Category("Evolution")
+    public static class GenomeDispatched extends Event {
+        @Label("Generation")
+        public int generation;
+        @Label("Genomes")
+        public int genomes;
+        @Label("Size")
+        @DataAmount
+        public int bytes;
+    }
+
+    @Name("evolution.FitnessReceived")
+    @Label("Fitness Received")
+    @Category("Evolution")
+    public static class FitnessReceived extends Event {
+        @Label("Generation")
+        public int generation;
+        @Label("Individuals")
+        public int individuals;
+        @Label("Queued packets")
+        public int queueLength;
+    }
+
+    @Name("evolution.LogFlush")
+    @Label("Log Flush")
+    @Category("Evolution")
+    public static class LogFlush extends Event {
+        @Label("Records")
+        public int records;
+        @Label("Files")
+        public int files;
+    }
+}
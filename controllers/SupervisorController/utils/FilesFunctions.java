@@ -1,131 +1,79 @@
 package utils;
 
-import nn.NeuralNetwork;
+import evolution.Population;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
 
+/**
+ * Log records of the evolution. Methods only queue numbers in an AsyncLog; the formats below turn them into text on
+ * the writer thread.
+ */
 public class FilesFunctions {
 
-    /**
-     * Writes weights of absolute best individual to file.
-     * @param out3          BufferedWriter initialised with a file name it will be writing to
-     * @param generation    Number of current generation
-     * @param NB_GENES      Number of genes (weights)
-     * @param absBestInd    Index of absolute best individual
-     * @param population    Population of neural networks
-     */
-    public static void logBest(BufferedWriter out3, int generation, int NB_GENES, int absBestInd, NeuralNetwork[] population)
-            throws IOException {
-        try {
-            out3.write("generation, absolute best ind index, weights");
-            out3.write("\n");
-            out3.write("" + generation + " " + absBestInd);
-            out3.write("\n");
-            for (int j = 0; j < NB_GENES; j++){
-                out3.write("" + population[absBestInd].getWeights()[j]);
-                out3.write("\n");
+    // Header, generation and absolute best index, one gene per line
+    private static final AsyncLog.Format BEST = new AsyncLog.Format() {
+        public void write(Writer out, int generation, int absBestInd, double[] genes, int length) throws IOException {
+            out.write("generation, absolute best ind index, weights");
+            out.write("\n");
+            out.write(generation + " " + absBestInd);
+            out.write("\n");
+            for (int j = 0; j < length; j++) {
+                out.write(Float.toString((float) genes[j]));
+                out.write("\n");
             }
-            out3.write("\n");
-            out3.flush();
-        } catch (IOException e) {
-            System.out.println("Buffer Error: " + e.getMessage());
-        }
-    }
-
-    /**
-     * Writes weights of current best individual to file - overwrites previous entry.
-     * @param population    Population of neural networks
-     * @param index         Index of current best individual
-     * @throws IOException
-     */
-    public static void logBestIndiv(NeuralNetwork[] population, int index) throws  IOException{
-        FileWriter file = new FileWriter("out/best_actor.txt");
-        BufferedWriter out = new BufferedWriter(file);
-        for(int i=0; i<population[index].getWeightsNo(); i++){
-            out.write(""+population[index].getWeights()[i]+",");
+            out.write("\n");
         }
-        out.write("\n");
-        out.flush();
-    }
+    };
 
-    /**
-     * Writes weights of every individual in current generation - overwrites previous entry.
-     * @param population    Population of neural networks
-     * @throws IOException
-     */
-    public static void logLastGeneration(NeuralNetwork[] population) throws IOException {
-        FileWriter file = new FileWriter("out/results:genomes.txt");
-        BufferedWriter out = new BufferedWriter(file);
-        try{
-            for(int i=0; i< population.length; i++){
-                for (int j=0; j<population[i].getWeightsNo(); j++){
-                    out.write(""+population[i].getWeights()[j]+",");
+    // Rows of genesNo genes, each gene followed by a comma; blank line after the last row if blank is 1
+    private static final AsyncLog.Format GENOMES = new AsyncLog.Format() {
+        public void write(Writer out, int blank, int genesNo, double[] genes, int length) throws IOException {
+            for (int i = 0; i < length; i += genesNo) {
+                for (int j = 0; j < genesNo; j++) {
+                    out.write(Float.toString((float) genes[i + j]));
+                    out.write(",");
                 }
                 out.write("\n");
             }
-            out.write("\n");
-            out.flush();
-        }   catch(IOException e){
-            System.err.println("Buffer error: "+e.getMessage());
+            if (blank == 1) out.write("\n");
         }
-    }
+    };
 
     /**
-     * Write all genomes and fitness scores to file
-     * @param out1          BufferedWriter initialised with a file name
+     * Writes weights of absolute best individual to file.
+     * @param log           Log the record is queued in
+     * @param file          Handle of file in log
      * @param generation    Number of current generation
-     * @param stats         Array with current statistics about worst, average and best individual for each game
+     * @param NB_GENES      Number of genes (weights)
+     * @param absBestInd    Index of absolute best individual
+     * @param population    Population of genomes
      */
-    public static void logPopulation(BufferedWriter out1, int generation, double[][] stats) throws IOException {
-        try {
-            out1.write("" + generation);
-            for(int i=0; i<stats.length; i++){
-                for(int j=0; j<stats[i].length; j++){
-                out1.write(","+stats[i][j]);
-                }
-            }
-            out1.write("\n");
-            out1.flush();
-        } catch (IOException e) {
-            System.err.println("Buffer Error: " + e.getMessage());
-        }
+    public static void logBest(AsyncLog log, int file, int generation, int NB_GENES, int absBestInd,
+                               Population population) {
+        log.append(file, BEST, generation, absBestInd, population.getGenes(), population.offset(absBestInd), NB_GENES);
     }
 
     /**
-     * Write worst, average and best fitness score of current generation
-     * @param out           BufferedWriter that is used to write into earlier initialised file
-     * @param generation    Number of generation
-     * @param worst         Worst fitness recorded
-     * @param avg           Average fitness recorded
-     * @param best          Best fitness recorded
+     * Writes weights of current best individual to file - overwrites previous entry.
+     * @param log           Log the record is queued in
+     * @param file          Handle of file in log, opened for overwriting
+     * @param population    Population of genomes
+     * @param index         Index of current best individual
      */
-    public static void logFitnessScores(BufferedWriter out, int generation, double worst, double avg, double best)
-            throws IOException{
-        try {
-            out.write("" + generation+","+worst+","+avg+","+best);
-            out.write("\n");
-            out.flush();
-        } catch (IOException e) {
-            System.err.println("Buffer Error: " + e.getMessage());
-        }
+    public static void logBestIndiv(AsyncLog log, int file, Population population, int index) {
+        log.append(file, GENOMES, 0, population.getGenesNo(), population.getGenes(), population.offset(index),
+                population.getGenesNo());
     }
 
     /**
-     * Writes fitness scores of every individual into a file. Appends data.
-     * @param out           BufferedWriter initialised with a file name
-     * @param generation    Number of current generation
-     * @param fitnessScores Array of fitness scores
+     * Writes weights of every individual in current generation - overwrites previous entry.
+     * @param log           Log the record is queued in
+     * @param file          Handle of file in log, opened for overwriting
+     * @param population    Population of genomes
      */
-    public static void logAllActorFitnesses(BufferedWriter out, int generation, double[] fitnessScores) {
-        try{
-            out.write(""+generation);
-            for(int i=0; i<fitnessScores.length; i++) out.write(","+fitnessScores[i]);
-            out.write("\n");
-            out.flush();
-        } catch (IOException ioe){
-            System.err.println("Buffer error: "+ioe.getMessage());
-        }
+    public static void logLastGeneration(AsyncLog log, int file, Population population) {
+        log.append(file, GENOMES, 1, population.getGenesNo(), population.getGenes(), 0,
+                population.getSize() * population.getGenesNo());
     }
-}
\ No newline at end of file
+}
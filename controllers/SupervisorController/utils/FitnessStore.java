@@ -0,0 +1,391 @@
+package utils;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Columnar fitness log (a copy lives in each controller). Every row holds generation, individual, game, raw fitness
+ * and normalised fitness; game -1 is used for summed fitness, individual -1 for fitness of a game itself.
+ * Rows are collected in blocks, usually one per generation, and every block is written as its five columns one after
+ * another, compressed with Deflater, to name.col. name.cix gets one 24 byte entry per block:
+ *   generation of first row, number of rows (ints), offset in name.col (long), compressed and raw size (ints)
+ * A reader inflates one block at a time into plain arrays, one per column, that analysis code can scan directly.
+ * A store created with an AsyncLog is written asynchronously, like the text logs: add() fills the columns on the
+ * caller's thread and endBlock() swaps them with a second set, which the log's writer thread compresses and appends
+ * while the next block is being filled. Files are created and closed by the writer thread too.
+ * Usage: java utils.FitnessStore name [file.csv] exports the store to CSV (standard output without a file).
+ */
+public class FitnessStore {
+
+    private static final int ENTRY_SIZE = 24;
+    private static final int ROW_SIZE = 4 + 4 + 4 + 8 + 8;
+
+    private RandomAccessFile dataFile, indexFile;
+    private FileChannel data, index;
+
+    // Columns of current block
+    private int rows;
+    private int[] generation = new int[256];
+    private int[] individual = new int[256];
+    private int[] game = new int[256];
+    private double[] raw = new double[256];
+    private double[] normalised = new double[256];
+
+    // Columns of the block being written
+    private int writeRows;
+    private int[] writeGeneration = new int[256];
+    private int[] writeIndividual = new int[256];
+    private int[] writeGame = new int[256];
+    private double[] writeRaw = new double[256];
+    private double[] writeNormalised = new double[256];
+
+    // Writer
+    private AsyncLog writer;                    // Writes blocks in the background, null to write on the caller
+    private boolean writing;                    // A block is queued or being written
+    private Runnable blockWriter;
+    private Deflater deflater;
+    private ByteBuffer block = ByteBuffer.allocate(256 * ROW_SIZE);
+    private byte[] compressed = new byte[0];
+    private ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+    private long offset;
+
+    // Reader
+    private Inflater inflater;
+    private ByteBuffer entries;
+    private int blocks;
+
+    private FitnessStore() {
+    }
+
+    /**
+     * Creates an empty store, overwriting an existing one
+     * @param name  Path of the store without extension
+     */
+    public static FitnessStore create(String name) throws IOException {
+        FitnessStore store = new FitnessStore();
+        store.createFiles(name);
+        return store;
+    }
+
+    /**
+     * Creates an empty store written by the writer thread of a log. Errors are reported on standard error.
+     * @param name      Path of the store without extension
+     * @param writer    Log whose writer thread creates the files and compresses and writes the blocks
+     */
+    public static FitnessStore create(final String name, AsyncLog writer) {
+        final FitnessStore store = new FitnessStore();
+        store.writer = writer;
+        store.blockWriter = new Runnable() {
+            public void run() {
+                try {
+                    if (store.data != null) store.writeBlock();
+                } catch (IOException e) {
+                    System.err.println("Cannot write fitness block: " + e.getMessage());
+                } finally {
+                    store.written();
+                }
+            }
+        };
+        writer.submit(new Runnable() {
+            public void run() {
+                try {
+                    store.createFiles(name);
+                } catch (IOException e) {
+                    System.err.println("Cannot create fitness store " + name + ": " + e.getMessage());
+                }
+            }
+        });
+        return store;
+    }
+
+    private void createFiles(String name) throws IOException {
+        dataFile = new RandomAccessFile(name + ".col", "rw");
+        indexFile = new RandomAccessFile(name + ".cix", "rw");
+        dataFile.setLength(0);
+        indexFile.setLength(0);
+        deflater = new Deflater(Deflater.BEST_SPEED);
+        index = indexFile.getChannel();
+        data = dataFile.getChannel();
+    }
+
+    /**
+     * Opens a store for reading
+     * @param name  Path of the store without extension
+     */
+    public static FitnessStore open(String name) throws IOException {
+        FitnessStore store = new FitnessStore();
+        store.dataFile = new RandomAccessFile(name + ".col", "r");
+        store.indexFile = new RandomAccessFile(name + ".cix", "r");
+        store.data = store.dataFile.getChannel();
+        store.index = store.indexFile.getChannel();
+        store.blocks = (int) (store.index.size() / ENTRY_SIZE);
+        store.entries = ByteBuffer.allocate(store.blocks * ENTRY_SIZE);
+        store.readFully(store.index, store.entries, 0);
+        store.inflater = new Inflater();
+        return store;
+    }
+
+    /**
+     * Adds a row to current block
+     * @param generation    Number of generation
+     * @param individual    Index of individual, -1 for a row about a game
+     * @param game          Number of game, -1 for summed fitness
+     * @param raw           Fitness as scored in the trial
+     * @param normalised    Fitness normalised into [0, 1]
+     */
+    public void add(int generation, int individual, int game, double raw, double normalised) {
+        if (rows == this.generation.length) grow(2 * rows);
+        this.generation[rows] = generation;
+        this.individual[rows] = individual;
+        this.game[rows] = game;
+        this.raw[rows] = raw;
+        this.normalised[rows] = normalised;
+        rows++;
+    }
+
+    /**
+     * Ends current block and starts a new one. The block is compressed and appended to the store on the writer
+     * thread if there is one, which may first have to finish the block before.
+     */
+    public void endBlock() throws IOException {
+        if (rows == 0) return;
+        synchronized (this) {
+            while (writing) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            writing = writer != null;
+        }
+
+        int[] g = generation, ind = individual, gm = game;
+        double[] r = raw, nr = normalised;
+        generation = writeGeneration;
+        individual = writeIndividual;
+        game = writeGame;
+        raw = writeRaw;
+        normalised = writeNormalised;
+        writeGeneration = g;
+        writeIndividual = ind;
+        writeGame = gm;
+        writeRaw = r;
+        writeNormalised = nr;
+        writeRows = rows;
+        rows = 0;
+
+        if (writer != null) writer.submit(blockWriter);
+        else writeBlock();
+    }
+
+    private synchronized void written() {
+        writing = false;
+        notifyAll();
+    }
+
+    /**
+     * Compresses the block handed over by endBlock() and appends it to the store
+     */
+    private void writeBlock() throws IOException {
+        int rows = writeRows;
+        int size = rows * ROW_SIZE;
+        if (block.capacity() < size) block = ByteBuffer.allocate(size);
+        block.clear();
+        block.asIntBuffer().put(writeGeneration, 0, rows);
+        block.position(4 * rows);
+        block.asIntBuffer().put(writeIndividual, 0, rows);
+        block.position(8 * rows);
+        block.asIntBuffer().put(writeGame, 0, rows);
+        block.position(12 * rows);
+        block.asDoubleBuffer().put(writeRaw, 0, rows);
+        block.position(20 * rows);
+        block.asDoubleBuffer().put(writeNormalised, 0, rows);
+
+        deflater.reset();
+        deflater.setInput(block.array(), 0, size);
+        deflater.finish();
+        if (compressed.length < size + 64) compressed = new byte[size + size / 8 + 64];
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == compressed.length) {
+                byte[] larger = new byte[2 * compressed.length];
+                System.arraycopy(compressed, 0, larger, 0, length);
+                compressed = larger;
+            }
+            length += deflater.deflate(compressed, length, compressed.length - length);
+        }
+        ByteBuffer src = ByteBuffer.wrap(compressed, 0, length);
+        while (src.hasRemaining()) data.write(src);
+
+        entry.clear();
+        entry.putInt(writeGeneration[0]).putInt(rows).putLong(offset).putInt(length).putInt(size);
+        entry.flip();
+        while (entry.hasRemaining()) index.write(entry);
+        offset += length;
+    }
+
+    /**
+     * Inflates a block into the column arrays
+     * @param b     Index of block
+     * @return      Number of rows of the block
+     */
+    public int readBlock(int b) throws IOException {
+        int n = entries.getInt(b * ENTRY_SIZE + 4);
+        long position = entries.getLong(b * ENTRY_SIZE + 8);
+        int length = entries.getInt(b * ENTRY_SIZE + 16);
+        int size = entries.getInt(b * ENTRY_SIZE + 20);
+
+        if (compressed.length < length) compressed = new byte[length];
+        readFully(data, ByteBuffer.wrap(compressed, 0, length), position);
+        if (block.capacity() < size) block = ByteBuffer.allocate(size);
+        inflater.reset();
+        inflater.setInput(compressed, 0, length);
+        try {
+            int done = 0;
+            while (done < size && !inflater.finished()) {
+                done += inflater.inflate(block.array(), done, size - done);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Block " + b + " is corrupt: " + e.getMessage());
+        }
+
+        if (generation.length < n) grow(n);
+        block.clear();
+        block.asIntBuffer().get(generation, 0, n);
+        block.position(4 * n);
+        block.asIntBuffer().get(individual, 0, n);
+        block.position(8 * n);
+        block.asIntBuffer().get(game, 0, n);
+        block.position(12 * n);
+        block.asDoubleBuffer().get(raw, 0, n);
+        block.position(20 * n);
+        block.asDoubleBuffer().get(normalised, 0, n);
+        rows = n;
+        return n;
+    }
+
+    private void readFully(FileChannel channel, ByteBuffer dst, long position) throws IOException {
+        while (dst.hasRemaining()) {
+            int n = channel.read(dst, position);
+            if (n < 0) throw new IOException("Unexpected end of file");
+            position += n;
+        }
+    }
+
+    private void grow(int capacity) {
+        int[] g = new int[capacity], ind = new int[capacity], gm = new int[capacity];
+        double[] r = new double[capacity], nr = new double[capacity];
+        System.arraycopy(generation, 0, g, 0, rows);
+        System.arraycopy(individual, 0, ind, 0, rows);
+        System.arraycopy(game, 0, gm, 0, rows);
+        System.arraycopy(raw, 0, r, 0, rows);
+        System.arraycopy(normalised, 0, nr, 0, rows);
+        generation = g;
+        individual = ind;
+        game = gm;
+        raw = r;
+        normalised = nr;
+    }
+
+    /**
+     * Writes every row of the store as CSV
+     * @param out   Writer the CSV is written to
+     */
+    public void exportCsv(java.io.Writer out) throws IOException {
+        out.write("generation,individual,game,raw,normalised\n");
+        for (int b = 0; b < blocks; b++) {
+            int n = readBlock(b);
+            for (int i = 0; i < n; i++) {
+                out.write(generation[i] + "," + individual[i] + "," + game[i] + "," + raw[i] + "," + normalised[i]);
+                out.write("\n");
+            }
+        }
+        out.flush();
+    }
+
+    /* Getters - columns of the block read or being written last */
+
+    public int getBlocks() {
+        return blocks;
+    }
+
+    /**
+     * @param b     Index of block
+     * @return      Generation of the first row of block
+     */
+    public int getBlockGeneration(int b) {
+        return entries.getInt(b * ENTRY_SIZE);
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int[] getGeneration() {
+        return generation;
+    }
+
+    public int[] getIndividual() {
+        return individual;
+    }
+
+    public int[] getGame() {
+        return game;
+    }
+
+    public double[] getRaw() {
+        return raw;
+    }
+
+    public double[] getNormalised() {
+        return normalised;
+    }
+
+    /**
+     * Closes the files, after every block ended so far if they are written by a log's writer thread
+     */
+    public void close() throws IOException {
+        if (writer == null) {
+            closeFiles();
+            return;
+        }
+        writer.submit(new Runnable() {
+            public void run() {
+                try {
+                    closeFiles();
+                } catch (IOException e) {
+                    System.err.println("Cannot close fitness store: " + e.getMessage());
+                }
+            }
+        });
+    }
+
+    private void closeFiles() throws IOException {
+        if (deflater != null) deflater.end();
+        if (inflater != null) inflater.end();
+        if (dataFile != null) dataFile.close();
+        if (indexFile != null) indexFile.close();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: FitnessStore name [file.csv]");
+            return;
+        }
+        FitnessStore store = open(args[0]);
+        java.io.Writer out = args.length > 1 ? new BufferedWriter(new FileWriter(args[1]))
+                : new BufferedWriter(new java.io.OutputStreamWriter(System.out));
+        store.exportCsv(out);
+        if (args.length > 1) out.close();
+        store.close();
+    }
+}
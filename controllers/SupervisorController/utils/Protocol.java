@@ -0,0 +1,176 @@
+package utils;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+/**
+ * Framed messages exchanged by SupervisorController and EpuckController (a copy lives in each controller).
+ * Every frame starts with a 16 byte header followed by the payload as big-endian floats:
+ *   type (byte), version (byte), flags (short), generation (int), individual (int), payload length in floats (int)
+ * Frames are encoded into a buffer kept for each message type and payloads are moved with bulk FloatBuffer
+ * transfers, so nothing is allocated per float and, once a type has been sent, nothing is allocated to send it again
+ * with the same length.
+ */
+public class Protocol {
+
+    public static final byte VERSION = 1;
+    public static final int HEADER_SIZE = 16;
+
+    // Message types
+    public static final byte GENOME = 1;            // Supervisor to robot: genome of one individual
+    public static final byte GENOME_BATCH = 2;      // Supervisor to robot: genomes run back to back; individual is their number
+    public static final byte TEST_GENOME = 3;       // Supervisor to robot: genome tested for an undetermined amount of time
+    public static final byte FITNESS = 4;           // Robot to supervisor: fitness of one individual on every game
+    public static final byte BATCH_FITNESS = 5;     // Robot to supervisor: fitness of every genome of the batch
+    public static final byte TRIAL_DONE = 6;        // Robot to supervisor: a trial of the batch is over
+    public static final byte END_GENERATION = 7;    // Supervisor to robot, games channel: evolve games
+    public static final byte ELITE_CUTOFFS = 8;     // Supervisor to robot, games channel: racing cutoffs, one per game
+    public static final byte GENOME_RECORD = 9;     // Supervisor to robot: genome as a GenomeCache record
+    public static final byte BATCH_RECORDS = 10;    // Supervisor to robot: GenomeCache records run back to back; individual is their number
+    public static final byte UNKNOWN_PARENT = 11;   // Robot to supervisor: a patch refers to a genome the robot does not hold
+    private static final int TYPES = 12;
+
+    // Flags
+    public static final short ESTIMATED = 1;        // FITNESS, TRIAL_DONE: trial was abandoned by racing, fitness is extrapolated
+
+    private byte[][] frames = new byte[TYPES][];            // Last frame encoded for every type
+    private ByteBuffer[] buffers = new ByteBuffer[TYPES];
+    private FloatBuffer[] payloads = new FloatBuffer[TYPES];
+
+    // Last decoded frame
+    private byte type;
+    private int generation;
+    private int individual;
+    private int length;
+    private short flags;
+    private FloatBuffer payload;
+
+    /**
+     * Writes the header of a frame and returns its payload, to be filled with exactly length floats
+     * @param type          Message type
+     * @param generation    Generation the message belongs to
+     * @param individual    Index of individual the message is about
+     * @param length        Number of floats in the payload
+     * @return              Payload of the frame, positioned at its first float
+     */
+    public FloatBuffer start(byte type, int generation, int individual, int length) {
+        int size = HEADER_SIZE + length * 4;
+        if (frames[type] == null || frames[type].length != size) {
+            frames[type] = new byte[size];
+            buffers[type] = ByteBuffer.wrap(frames[type]);
+            buffers[type].position(HEADER_SIZE);
+            payloads[type] = buffers[type].slice().asFloatBuffer();
+        }
+        ByteBuffer buffer = buffers[type];
+        buffer.put(0, type);
+        buffer.put(1, VERSION);
+        buffer.putShort(2, (short) 0);
+        buffer.putInt(4, generation);
+        buffer.putInt(8, individual);
+        buffer.putInt(12, length);
+        payloads[type].clear();
+        return payloads[type];
+    }
+
+    /**
+     * Sets flags of the last frame started for a type; start() clears them
+     * @param type      Message type
+     * @param flags     Flags, e.g. ESTIMATED
+     */
+    public void setFlags(byte type, short flags) {
+        buffers[type].putShort(2, flags);
+    }
+
+    /**
+     * @param type  Message type
+     * @return      Last frame started for this type, ready to be sent
+     */
+    public byte[] frame(byte type) {
+        return frames[type];
+    }
+
+    /**
+     * Encodes a whole frame
+     * @param type          Message type
+     * @param generation    Generation the message belongs to
+     * @param individual    Index of individual the message is about
+     * @param values        Array holding the payload
+     * @param offset        Index of first float of the payload
+     * @param length        Number of floats in the payload
+     * @return              Frame, valid until the next frame of the same type is encoded
+     */
+    public byte[] encode(byte type, int generation, int individual, float[] values, int offset, int length) {
+        start(type, generation, individual, length).put(values, offset, length);
+        return frames[type];
+    }
+
+    /**
+     * Encodes a frame without payload
+     */
+    public byte[] encode(byte type, int generation, int individual) {
+        start(type, generation, individual, 0);
+        return frames[type];
+    }
+
+    /**
+     * Decodes the header of a received frame. Its payload is read straight from the received bytes.
+     * @param frame     Received bytes
+     * @return          False if bytes are not a frame of this version of the protocol
+     */
+    public boolean decode(byte[] frame) {
+        if (frame.length < HEADER_SIZE) {
+            System.err.println("Dropped message of " + frame.length + " bytes: too short for a frame");
+            return false;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(frame);
+        if (buffer.get(1) != VERSION) {
+            System.err.println("Dropped frame of protocol version " + buffer.get(1) + ", expected " + VERSION);
+            return false;
+        }
+        type = buffer.get(0);
+        flags = buffer.getShort(2);
+        generation = buffer.getInt(4);
+        individual = buffer.getInt(8);
+        length = buffer.getInt(12);
+        if (type <= 0 || type >= TYPES || length < 0 || HEADER_SIZE + length * 4 != frame.length) {
+            System.err.println("Dropped malformed frame of type " + type + " and " + frame.length + " bytes");
+            return false;
+        }
+        buffer.position(HEADER_SIZE);
+        payload = buffer.slice().asFloatBuffer();
+        return true;
+    }
+
+    /* Getters for the last decoded frame */
+
+    public byte getType() {
+        return type;
+    }
+
+    public int getGeneration() {
+        return generation;
+    }
+
+    public int getIndividual() {
+        return individual;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @param flag  Flag, e.g. ESTIMATED
+     * @return      True if the flag is set in the last decoded frame
+     */
+    public boolean hasFlag(short flag) {
+        return (flags & flag) != 0;
+    }
+
+    /**
+     * @return  Payload of the last decoded frame, positioned at its first float
+     */
+    public FloatBuffer getPayload() {
+        return payload;
+    }
+}
@@ -0,0 +1,148 @@
+package utils;
+
+/**
+ * Ranking of individuals by a fitness column. Individuals are represented by their indexes in a primitive int array
+ * that is reordered by the fitness it points to, best first - fitness itself is never moved, boxed or copied.
+ * Sorting is a stable bottom-up merge sort, O(N log N) on any input including sorted and equal fitness; partial
+ * selection of the best k is an O(N) quickselect. Neither recurses nor allocates: callers own index and scratch
+ * arrays and reuse them between generations.
+ */
+public class Ranking {
+
+    private static final int INSERTION_SORT_RUN = 16;      // Length of runs sorted by insertion before merging
+
+    /**
+     * Fills index array with identity permutation
+     * @param index     Array of indexes
+     * @param n         Number of individuals
+     */
+    public static void identity(int[] index, int n) {
+        for (int i = 0; i < n; i++) index[i] = i;
+    }
+
+    /**
+     * Ranks individuals 0..n-1 by fitness, best first. Equal fitness keeps order of indexes.
+     * @param fitness   Fitness column
+     * @param index     Receives indexes of individuals sorted by fitness, length at least n
+     * @param scratch   Work array of length at least n
+     * @param n         Number of individuals
+     */
+    public static void rank(double[] fitness, int[] index, int[] scratch, int n) {
+        identity(index, n);
+        sort(fitness, index, scratch, n);
+    }
+
+    /**
+     * Sorts first n entries of an index array by the fitness they point to, best first. Stable.
+     * @param fitness   Fitness column
+     * @param index     Indexes of individuals to sort
+     * @param scratch   Work array of length at least n
+     * @param n         Number of entries to sort
+     */
+    public static void sort(double[] fitness, int[] index, int[] scratch, int n) {
+        int i, j;
+
+        // Short runs are sorted in place by insertion
+        for (int start = 0; start < n; start += INSERTION_SORT_RUN) {
+            int end = Math.min(start + INSERTION_SORT_RUN, n);
+            for (i = start + 1; i < end; i++) {
+                int ind = index[i];
+                double f = fitness[ind];
+                for (j = i - 1; j >= start && fitness[index[j]] < f; j--) index[j + 1] = index[j];
+                index[j + 1] = ind;
+            }
+        }
+
+        // Runs are merged pairwise, alternating between index and scratch arrays
+        int[] src = index, dst = scratch;
+        for (int width = INSERTION_SORT_RUN; width < n; width *= 2) {
+            for (int left = 0; left < n; left += 2 * width) {
+                int mid = Math.min(left + width, n);
+                int right = Math.min(left + 2 * width, n);
+                i = left;
+                j = mid;
+                for (int k = left; k < right; k++) {
+                    // Left run wins ties, which keeps the sort stable
+                    if (i < mid && (j >= right || fitness[src[i]] >= fitness[src[j]])) dst[k] = src[i++];
+                    else dst[k] = src[j++];
+                }
+            }
+            int[] temp = src;
+            src = dst;
+            dst = temp;
+        }
+        if (src != index) System.arraycopy(src, 0, index, 0, n);
+    }
+
+    /**
+     * Moves the k best individuals to the front of the index array and sorts them, best first. Order of the rest is
+     * unspecified. Costs O(N + k log k) instead of sorting the whole population.
+     * @param fitness   Fitness column
+     * @param index     Indexes of individuals, e.g. from identity()
+     * @param scratch   Work array of length at least k
+     * @param n         Number of individuals
+     * @param k         Number of best individuals needed
+     */
+    public static void selectTop(double[] fitness, int[] index, int[] scratch, int n, int k) {
+        if (k <= 0) return;
+        if (k < n) select(fitness, index, n, k);
+        sort(fitness, index, scratch, Math.min(k, n));
+    }
+
+    /**
+     * Partitions index array so that its first k entries point to the k best individuals (iterative quickselect with
+     * median of three pivot and three-way partitioning, so equal fitness values do not degrade it).
+     */
+    private static void select(double[] fitness, int[] index, int n, int k) {
+        int left = 0, right = n - 1;
+        while (left < right) {
+            int mid = (left + right) >>> 1;
+            double a = fitness[index[left]], b = fitness[index[mid]], c = fitness[index[right]];
+            double pivot = Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
+
+            // Entries better than pivot go to [left, lt), equal to [lt, gt], worse to (gt, right]
+            int lt = left, gt = right, i = left;
+            while (i <= gt) {
+                double f = fitness[index[i]];
+                if (f > pivot) swap(index, lt++, i++);
+                else if (f < pivot) swap(index, i, gt--);
+                else i++;
+            }
+            if (k <= lt) right = lt - 1;
+            else if (k > gt + 1) left = gt + 1;
+            else return;
+        }
+    }
+
+    private static void swap(int[] index, int i, int j) {
+        int temp = index[i];
+        index[i] = index[j];
+        index[j] = temp;
+    }
+
+    /**
+     * @param fitness   Fitness column
+     * @param n         Number of individuals
+     * @return          Index of the best individual, the first one on ties
+     */
+    public static int argMax(double[] fitness, int n) {
+        int best = 0;
+        for (int i = 1; i < n; i++) {
+            if (fitness[i] > fitness[best]) best = i;
+        }
+        return best;
+    }
+
+    /**
+     * @param fitness   Fitness column
+     * @param n         Number of individuals
+     * @return          Index of the worst individual, the first one on ties
+     */
+    public static int argMin(double[] fitness, int n) {
+        int worst = 0;
+        for (int i = 1; i < n; i++) {
+            if (fitness[i] < fitness[worst]) worst = i;
+        }
+        return worst;
+    }
+}
@@ -0,0 +1,137 @@
+package utils;
+
+import java.util.Random;
+
+/**
+ * Seeded random number generator (xoroshiro128++, Blackman and Vigna 2019) usable wherever a java.util.Random is
+ * expected. Unlike Random it is not synchronised, so every thread must own its generator.
+ * Independent streams are derived from one master seed with mix(): the engine draws one stream per individual and
+ * generation, so a trial sees the same random numbers whichever worker runs it and results do not depend on the
+ * number of threads.
+ */
+public class Rng extends Random {
+
+    private static final long serialVersionUID = 1L;
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private long s0, s1;                    // State of the generator
+    private double nextNextGaussian;        // Second variate of the last polar pair
+    private boolean haveNextNextGaussian;
+
+    /**
+     * Generator seeded from the clock; use it only where reproducibility does not matter
+     */
+    public Rng() {
+        this(System.nanoTime());
+    }
+
+    /**
+     * @param seed  Seed of the generator
+     */
+    public Rng(long seed) {
+        super(seed);
+    }
+
+    /**
+     * Generator of an independent stream
+     * @param seed      Master seed
+     * @param stream    Index of stream
+     */
+    public Rng(long seed, long stream) {
+        this(mix(seed, stream));
+    }
+
+    /**
+     * Restarts the generator. The seed is expanded with SplitMix64, so nearby seeds give unrelated sequences.
+     * Called by the Random constructor as well.
+     * @param seed  Seed of the generator
+     */
+    public void setSeed(long seed) {
+        long z = seed;
+        s0 = splitMix(z += GOLDEN_GAMMA);
+        s1 = splitMix(z + GOLDEN_GAMMA);
+        if ((s0 | s1) == 0) s1 = GOLDEN_GAMMA;     // All-zero state is the only one xoroshiro cannot leave
+        haveNextNextGaussian = false;
+    }
+
+    public long nextLong() {
+        long a = s0, b = s1;
+        long result = Long.rotateLeft(a + b, 17) + a;
+        b ^= a;
+        s0 = Long.rotateLeft(a, 49) ^ b ^ (b << 21);
+        s1 = Long.rotateLeft(b, 28);
+        return result;
+    }
+
+    protected int next(int bits) {
+        return (int) (nextLong() >>> (64 - bits));
+    }
+
+    public int nextInt() {
+        return (int) (nextLong() >>> 32);
+    }
+
+    public boolean nextBoolean() {
+        return nextLong() < 0;
+    }
+
+    public float nextFloat() {
+        return (nextLong() >>> 40) * 0x1.0p-24f;
+    }
+
+    public double nextDouble() {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * Standard normal variate with the polar method. Both variates of a pair are used, and unlike Random the
+     * method is not synchronised.
+     * @return  Normally distributed value with mean 0 and standard deviation 1
+     */
+    public double nextGaussian() {
+        if (haveNextNextGaussian) {
+            haveNextNextGaussian = false;
+            return nextNextGaussian;
+        }
+        double v1, v2, s;
+        do {
+            v1 = 2 * nextDouble() - 1;
+            v2 = 2 * nextDouble() - 1;
+            s = v1 * v1 + v2 * v2;
+        } while (s >= 1 || s == 0);
+        double multiplier = Math.sqrt(-2 * Math.log(s) / s);
+        nextNextGaussian = v2 * multiplier;
+        haveNextNextGaussian = true;
+        return v1 * multiplier;
+    }
+
+    /**
+     * Seed of an independent stream derived from a master seed
+     * @param seed      Master seed
+     * @param stream    Index of stream, e.g. worker
+     * @return          Seed of the stream
+     */
+    public static long mix(long seed, long stream) {
+        return splitMix(seed ^ splitMix(stream + GOLDEN_GAMMA));
+    }
+
+    /**
+     * Seed of an independent stream identified by two indexes, e.g. generation and individual
+     * @param seed      Master seed
+     * @param a         First index
+     * @param b         Second index
+     * @return          Seed of the stream
+     */
+    public static long mix(long seed, long a, long b) {
+        return mix(mix(seed, a), b);
+    }
+
+    /**
+     * SplitMix64 finaliser, a bijective scrambling of 64 bits
+     */
+    private static long splitMix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,314 @@
+package utils;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Records the path of the robot during every trial as a buffer of points and turns it into files on a background
+ * thread, so the simulation thread only stores two floats per step. A trajectory is drawn the way the ground
+ * display used to draw it: a 2x2 dot of opacity 0.03 per step on a white background.
+ * Modes:
+ *   IMAGES     one PNG per individual, dir/screenshot[individual].png
+ *   SPRITES    one PNG per generation, dir/generation[generation].png, holding the trajectory of individual i in
+ *              tile i of a grid of columns x rows tiles
+ *   VECTORS    no images; dir/trajectories[generation].bin holds for every trial individual, number of points (ints)
+ *              and the points as x, z pairs (floats)
+ * If the writer falls behind by more than MAX_PENDING trials, a finished trial waits at most MAX_WAIT ms and is then
+ * dropped.
+ */
+public class TrajectoryRecorder {
+
+    public static final int IMAGES = 0;
+    public static final int SPRITES = 1;
+    public static final int VECTORS = 2;
+
+    private int MAX_PENDING = 64;               // Trials waiting for the writer
+    private int MAX_WAIT = 50;                  // [ms] longest a finished trial waits for the writer
+    private int MAX_POINTS = 1 << 20;           // Points of a trial beyond this are not recorded
+    private static final double OPACITY = 0.03;
+
+    /**
+     * Points of one trial, or the end of a generation if individual is -1
+     */
+    private static class Trajectory {
+        int generation, individual, size;
+        float[] x = new float[1024];
+        float[] z = new float[1024];
+    }
+
+    private int mode;
+    private String dir;
+    private int width, height;                  // Size of one image in pixels
+    private double groundX, groundZ;            // Size of the ground in metres
+    private int columns, rows;                  // Tiles of a sprite sheet
+
+    private Trajectory current = new Trajectory();
+    private ArrayList<Trajectory> pending = new ArrayList<Trajectory>();
+    private ArrayList<Trajectory> free = new ArrayList<Trajectory>();
+    private boolean closed;
+    private long dropped;
+    private Thread writer;
+
+    // Owned by writer thread
+    private int[] hits;                         // Dots drawn on every pixel of current image or sheet
+    private int sheetGeneration = -1;
+    private DataOutputStream vectors;
+    private int vectorsGeneration = -1;
+    private int[] shades = new int[256];        // Grey level of a pixel after n dots, for n < shades.length
+
+    /**
+     * @param mode          IMAGES, SPRITES or VECTORS
+     * @param dir           Directory files are written to
+     * @param width         Width of one image in pixels
+     * @param height        Height of one image in pixels
+     * @param groundX       Size of the ground along x in metres
+     * @param groundZ       Size of the ground along z in metres
+     * @param individuals   Individuals of a generation, i.e. tiles of a sprite sheet
+     */
+    public TrajectoryRecorder(int mode, String dir, int width, int height, double groundX, double groundZ,
+                              int individuals) {
+        this.mode = mode;
+        this.dir = dir;
+        this.width = width;
+        this.height = height;
+        this.groundX = groundX;
+        this.groundZ = groundZ;
+        columns = (int) Math.ceil(Math.sqrt(individuals));
+        rows = (individuals + columns - 1) / columns;
+        if (mode == SPRITES) hits = new int[columns * width * rows * height];
+        else if (mode == IMAGES) hits = new int[width * height];
+        double shade = 255;
+        for (int i = 0; i < shades.length; i++) {
+            shades[i] = (int) Math.round(shade);
+            shade *= 1 - OPACITY;
+        }
+        new File(dir).mkdirs();
+
+        writer = new Thread("trajectory writer") {
+            public void run() {
+                drain();
+            }
+        };
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            public void run() {
+                close();
+            }
+        });
+    }
+
+    /**
+     * Adds current position of the robot to the trajectory of current trial
+     * @param x     Position along x in metres
+     * @param z     Position along z in metres
+     */
+    public void add(double x, double z) {
+        Trajectory t = current;
+        if (t.size == MAX_POINTS) return;
+        if (t.size == t.x.length) {
+            float[] nx = new float[2 * t.size], nz = new float[2 * t.size];
+            System.arraycopy(t.x, 0, nx, 0, t.size);
+            System.arraycopy(t.z, 0, nz, 0, t.size);
+            t.x = nx;
+            t.z = nz;
+        }
+        t.x[t.size] = (float) x;
+        t.z[t.size] = (float) z;
+        t.size++;
+    }
+
+    /**
+     * Hands the trajectory of the trial that just ended to the writer and starts a new one
+     * @param generation    Number of generation
+     * @param individual    Index of individual that just finished its trial
+     */
+    public void endTrial(int generation, int individual) {
+        current.generation = generation;
+        current.individual = individual;
+        submit(current);
+        current = obtain();
+    }
+
+    /**
+     * Ends a generation: writes its sprite sheet or closes its vector file
+     * @param generation    Number of generation
+     */
+    public void endGeneration(int generation) {
+        Trajectory marker = obtain();
+        marker.generation = generation;
+        marker.individual = -1;
+        submit(marker);
+    }
+
+    /**
+     * @return  Empty trajectory, reused if the writer has released one
+     */
+    private synchronized Trajectory obtain() {
+        Trajectory t = free.isEmpty() ? new Trajectory() : free.remove(free.size() - 1);
+        t.size = 0;
+        return t;
+    }
+
+    /**
+     * Queues a trajectory; ends of generations are never dropped
+     */
+    private synchronized void submit(Trajectory t) {
+        long deadline = System.currentTimeMillis() + MAX_WAIT;
+        while (!closed && pending.size() >= MAX_PENDING && t.individual >= 0) {
+            long wait = deadline - System.currentTimeMillis();
+            if (wait <= 0) break;
+            try {
+                wait(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if (closed || (pending.size() >= MAX_PENDING && t.individual >= 0)) {
+            dropped++;
+            free.add(t);
+            return;
+        }
+        pending.add(t);
+        notifyAll();
+    }
+
+    /**
+     * Writer thread: writes queued trajectories until the recorder is closed and empty
+     */
+    private void drain() {
+        while (true) {
+            Trajectory t;
+            synchronized (this) {
+                while (pending.isEmpty() && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (pending.isEmpty()) break;
+                t = pending.get(0);
+            }
+
+            try {
+                write(t);
+            } catch (IOException e) {
+                System.err.println("Cannot write trajectory of individual " + t.individual + ": " + e.getMessage());
+            }
+
+            synchronized (this) {
+                pending.remove(0);
+                free.add(t);
+                notifyAll();
+            }
+        }
+        try {
+            if (sheetGeneration >= 0) writeSheet();
+            if (vectors != null) vectors.close();
+        } catch (IOException e) {
+            System.err.println("Cannot write trajectories: " + e.getMessage());
+        }
+    }
+
+    private void write(Trajectory t) throws IOException {
+        int i;
+        if (mode == VECTORS) {
+            if (t.individual < 0 || t.generation != vectorsGeneration) {
+                if (vectors != null) vectors.close();
+                vectors = null;
+                if (t.individual < 0) return;
+            }
+            if (vectors == null) {
+                vectors = new DataOutputStream(new BufferedOutputStream(
+                        new FileOutputStream(dir + "/trajectories" + t.generation + ".bin")));
+                vectorsGeneration = t.generation;
+            }
+            vectors.writeInt(t.individual);
+            vectors.writeInt(t.size);
+            for (i = 0; i < t.size; i++) {
+                vectors.writeFloat(t.x[i]);
+                vectors.writeFloat(t.z[i]);
+            }
+        } else if (mode == SPRITES) {
+            if (t.individual < 0 || (sheetGeneration >= 0 && t.generation != sheetGeneration)) {
+                if (sheetGeneration >= 0) writeSheet();
+                if (t.individual < 0) return;
+            }
+            sheetGeneration = t.generation;
+            draw(t, (t.individual % columns) * width, (t.individual / columns) * height, columns * width);
+        } else if (t.individual >= 0) {
+            draw(t, 0, 0, width);
+            writeImage(width, height, dir + "/screenshot" + t.individual + ".png");
+        }
+    }
+
+    /**
+     * Draws dots of a trajectory into hits
+     * @param left      First column of the tile
+     * @param top       First row of the tile
+     * @param stride    Width of the whole image
+     */
+    private void draw(Trajectory t, int left, int top, int stride) {
+        for (int i = 0; i < t.size; i++) {
+            // Same mapping as the ground display: z runs along the columns, x along the rows
+            int u = (int) (height * (t.z[i] + groundZ / 2) / groundZ);
+            int v = (int) (width * (t.x[i] + groundX / 2) / groundX);
+            for (int dv = 0; dv < 2; dv++) {
+                for (int du = 0; du < 2; du++) {
+                    int c = u + du, r = v + dv;
+                    if (c < 0 || c >= width || r < 0 || r >= height) continue;
+                    hits[(top + r) * stride + left + c]++;
+                }
+            }
+        }
+    }
+
+    private void writeSheet() throws IOException {
+        writeImage(columns * width, rows * height, dir + "/generation" + sheetGeneration + ".png");
+        sheetGeneration = -1;
+    }
+
+    /**
+     * Encodes hits as a PNG and clears them
+     */
+    private void writeImage(int w, int h, String path) throws IOException {
+        BufferedImage image = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+        int[] rgb = new int[w * h];
+        for (int i = 0; i < rgb.length; i++) {
+            int shade = hits[i] < shades.length ? shades[hits[i]] : 0;
+            rgb[i] = (shade << 16) | (shade << 8) | shade;
+            hits[i] = 0;
+        }
+        image.setRGB(0, 0, w, h, rgb, 0, w);
+        ImageIO.write(image, "png", new File(path));
+    }
+
+    /**
+     * Writes all queued trajectories and stops the writer thread
+     */
+    public void close() {
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            notifyAll();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (dropped > 0) System.err.println("Dropped " + dropped + " trajectories while the writer was busy");
+    }
+
+    public synchronized long getDropped() {
+        return dropped;
+    }
+}
@@ -1,6 +1,6 @@
 package utils;
 
-import nn.NeuralNetwork;
+import evolution.Population;
 
 import java.nio.ByteBuffer;
 import java.util.Random;
@@ -235,26 +235,9 @@ public class Util {
      * @return          Returns array of floats
      */
     public static float[] bytes2FloatArray(byte[] values){
-
-        int p=0, r=0;
         float[] floats = new float[values.length/4];
-        byte[] weight = new byte[4];
-        for(int i=0; i< values.length; i++){
-            if(p<4){
-                weight[p] = values[i];
-                p++;
-            }
-            else {
-                p=0;
-                float fl = ByteBuffer.wrap(weight).getFloat();
-                floats[r] = fl;
-                weight[p] = values[i];
-                p++;
-                r++;
-            }
-        }
+        ByteBuffer.wrap(values).asFloatBuffer().get(floats);
         return floats;
-
     }
 
     /**
@@ -264,70 +247,36 @@ public class Util {
      */
     public static byte [] float2ByteArray (float[] values)
     {
-        byte[][] b = new byte[values.length][4];
-
-        for(int i=0; i<values.length; i++){
-            b[i] = ByteBuffer.allocate(4).putFloat(values[i]).array();
-        }
-        byte[] result = new byte[b.length*4];
-        int counter = 0;
-        for(int i=0; i<b.length; i++){
-            for(int j=0; j<b[i].length; j++){
-                result[counter] = b[i][j];
-                counter++;
-            }
-
-        }
-        return result;
+        return float2ByteArray(values, 0, values.length);
     }
 
     /**
-     * Method to concatenate arrays
-     * @param arrays   Array of Neural Network arrays
-     * @return         Returns concatenated arrays into one array
+     * Converts a slice of an array of floats into an array of bytes
+     * @param values    Array of floats
+     * @param offset    Index of first float to convert
+     * @param length    Number of floats to convert
+     * @return          Returns array of bytes
      */
-    public static NeuralNetwork[] concat(NeuralNetwork[][] arrays) {
-        int lengh = 0;
-        for (NeuralNetwork[] array : arrays) {
-            lengh += array.length;
-        }
-        NeuralNetwork[] result = new NeuralNetwork[lengh];
-        int pos = 0;
-        for (NeuralNetwork[] array : arrays) {
-            for (NeuralNetwork element : array) {
-                result[pos] = element;
-                pos++;
-            }
-        }
+    public static byte [] float2ByteArray (float[] values, int offset, int length)
+    {
+        byte[] result = new byte[length * 4];
+        ByteBuffer.wrap(result).asFloatBuffer().put(values, offset, length);
         return result;
     }
 
     /**
-     * Shuffles elements of an array
-     * @param a     Array of neural networks
+     * Shuffles individuals of a population in place (Fisher-Yates), moving their fitness scores with them
+     * @param population    Population to shuffle
+     * @param random        Source of randomness
      */
-    public static void shuffleList(NeuralNetwork[] a) {
-        int n = a.length;
-        Random random = new Random();
-        random.nextInt();
+    public static void shuffleList(Population population, Random random) {
+        int n = population.getSize();
         for (int i = 0; i < n; i++) {
             int change = i + random.nextInt(n - i);
-            swap(a, i, change);
+            population.swap(i, change);
         }
     }
 
-    /**
-     * Swaps two elements of an array
-     * @param a         Array of NeuralNetwork elements
-     * @param i         Index of one elements
-     * @param change    Index of second element
-     */
-    private static void swap(NeuralNetwork[]a, int i, int change) {
-        NeuralNetwork helper = a[i];
-        a[i] =  a[change];
-        a[change] = helper;
-    }
-
     /**
      * Bounds a float value to prevent from producing NaNs
      * @param d     float value